@@ -0,0 +1,51 @@
+import ij.IJ;
+import ij.ImagePlus;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Objects;
+
+// Modo de verificação: compara os eixos calculados pelo fecho convexo com a implementação O(n²) original.
+//
+// Uso: java -cp ij.jar:. AxesVerifier ["imgs forma"]
+public class AxesVerifier {
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        File dir = new File(args.length > 0 ? args[0] : "imgs forma");
+        String[] paths = Objects.requireNonNull(dir.list());
+        Arrays.sort(paths);
+
+        int checked = 0;
+        int mismatches = 0;
+        long fastTime = 0;
+        long bruteTime = 0;
+        for (String path : paths) {
+            ImagePlus image = IJ.openImage(new File(dir, path).getPath());
+            if (image == null) {
+                continue;
+            }
+            ContourTracer contours = ImageDescriptorExtractor.extractContours(image);
+
+            long start = System.nanoTime();
+            double[] fast = ImageDescriptorExtractor.calculateMajorMinorAxes(contours);
+            fastTime += System.nanoTime() - start;
+            start = System.nanoTime();
+            double[] brute = ImageDescriptorExtractor.calculateMajorMinorAxesBruteForce(contours);
+            bruteTime += System.nanoTime() - start;
+
+            checked++;
+            if (fast[0] != brute[0] || fast[1] != brute[1]) {
+                mismatches++;
+                System.out.println("MISMATCH " + path + ": hull " + Arrays.toString(fast) + ", brute force "
+                        + Arrays.toString(brute));
+            }
+        }
+
+        System.out.println("Checked " + checked + " images, " + mismatches + " mismatches");
+        System.out.println("Convex hull: " + fastTime / 1000000 + " ms, brute force: " + bruteTime / 1000000 + " ms");
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import ij.IJ;
+import ij.ImagePlus;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Objects;
+
+// Modo de verificação do DescriptorCache: extrai cada imagem duas vezes do mesmo ImagePlus. A segunda extração
+// precisa ser um acerto do cache, devolver os mesmos descritores e deixar os pixels intactos, e os descritores
+// precisam ser iguais aos extraídos sem cache.
+//
+// Uso: java -cp ij.jar:. CacheVerifier ["imgs forma"]
+public class CacheVerifier {
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        File dir = new File(args.length > 0 ? args[0] : "imgs forma");
+        String[] paths = Objects.requireNonNull(dir.list());
+        Arrays.sort(paths);
+
+        DescriptorCache cache = DescriptorCache.shared();
+        int checked = 0;
+        int mismatches = 0;
+        for (String path : paths) {
+            ImagePlus image = IJ.openImage(new File(dir, path).getPath());
+            if (image == null) {
+                continue;
+            }
+            cache.setMaximumSize(0);
+            double[] uncached = ImageDescriptorExtractor.extractDescriptors(image.duplicate());
+            cache.setMaximumSize(DescriptorCache.DEFAULT_MAXIMUM_SIZE);
+            cache.clear();
+            cache.resetStatistics();
+
+            long before = DescriptorCache.key(image.getProcessor(), ImageDescriptorExtractor.getConfiguration())
+                    .getHash();
+            double[] first = ImageDescriptorExtractor.extractDescriptors(image);
+            double[] second = ImageDescriptorExtractor.extractDescriptors(image);
+            long after = DescriptorCache.key(image.getProcessor(), ImageDescriptorExtractor.getConfiguration())
+                    .getHash();
+
+            checked++;
+            if (cache.getHits() != 1 || before != after || !Arrays.equals(first, second)
+                    || !Arrays.equals(first, uncached)) {
+                mismatches++;
+                System.out.println("MISMATCH " + path + ": " + cache.getHits() + " hits, pixels "
+                        + (before == after ? "unchanged" : "changed") + ", descriptors " + Arrays.toString(first)
+                        + " / " + Arrays.toString(second) + ", without cache " + Arrays.toString(uncached));
+            }
+        }
+
+        System.out.println("Checked " + checked + " images, " + mismatches + " mismatches");
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Rotulação de componentes conexos (vizinhança-8) da imagem de bordas em faixas de linhas paralelas.
+// Cada faixa une seus pixels em uma floresta union-find indexada pelo próprio pixel; as costuras entre faixas são
+// unidas depois, em série. A raiz de cada componente é sempre o seu menor índice, então os rótulos 1..N seguem a
+// ordem raster do primeiro pixel, como em uma varredura serial. O resultado inclui a lista de pixels de cada
+// componente (em ordem raster) e o retângulo envolvente.
+public class ComponentLabeller {
+
+    // Número aproximado de pixels por faixa de linhas
+    private static final int BAND_PIXELS = 256 * 1024;
+
+    private final int width;
+    private final int height;
+    // 0 para o fundo, 1..count para os componentes
+    private final int[] labels;
+    private final int count;
+    // Pixels do componente c em pixels[offsets[c] .. offsets[c + 1])
+    private final int[] offsets;
+    private final int[] pixels;
+    // minX, minY, maxX, maxY de cada componente
+    private final int[] bounds;
+
+    private ComponentLabeller(int width, int height, int[] labels, int count, int[] offsets, int[] pixels,
+            int[] bounds) {
+        this.width = width;
+        this.height = height;
+        this.labels = labels;
+        this.count = count;
+        this.offsets = offsets;
+        this.pixels = pixels;
+        this.bounds = bounds;
+    }
+
+    // Pixels diferentes de zero em "mask" são de primeiro plano
+    public static ComponentLabeller label(byte[] mask, int width, int height) {
+        if (mask.length < width * height) {
+            throw new IllegalArgumentException("Mask is smaller than " + width + "x" + height);
+        }
+        int size = width * height;
+        int bandRows = Math.max(1, BAND_PIXELS / Math.max(1, width));
+        int bands = Math.max(1, (height + bandRows - 1) / bandRows);
+        int[] parent = new int[size];
+        int[] labels = new int[size];
+
+        // Union-find dentro de cada faixa; todas as uniões envolvem apenas pixels da própria faixa
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int from = band * bandRows;
+            int to = Math.min(height, from + bandRows);
+            for (int y = from; y < to; y++) {
+                for (int x = 0; x < width; x++) {
+                    int p = y * width + x;
+                    if (mask[p] == 0) {
+                        parent[p] = -1;
+                        continue;
+                    }
+                    parent[p] = p;
+                    if (x > 0 && mask[p - 1] != 0) {
+                        union(parent, p, p - 1);
+                    }
+                    if (y > from) {
+                        unionAbove(mask, parent, width, x, p);
+                    }
+                }
+            }
+        });
+
+        // Costuras: primeira linha de cada faixa com a última linha da faixa anterior
+        for (int band = 1; band < bands; band++) {
+            int y = band * bandRows;
+            for (int x = 0; x < width; x++) {
+                int p = y * width + x;
+                if (mask[p] != 0) {
+                    unionAbove(mask, parent, width, x, p);
+                }
+            }
+        }
+
+        // Raiz de cada pixel (parent só é lido) e número de raízes por faixa
+        int[] roots = new int[bands + 1];
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int from = band * bandRows * width;
+            int to = Math.min(height, (band + 1) * bandRows) * width;
+            int bandRoots = 0;
+            for (int p = from; p < to; p++) {
+                if (parent[p] >= 0) {
+                    int root = root(parent, p);
+                    labels[p] = root + 1;
+                    if (root == p) {
+                        bandRoots++;
+                    }
+                }
+            }
+            roots[band + 1] = bandRoots;
+        });
+        for (int band = 0; band < bands; band++) {
+            roots[band + 1] += roots[band];
+        }
+        int count = roots[bands];
+
+        // Rótulos finais das raízes, numerados em ordem raster; parent[raiz] passa a guardar o rótulo
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int from = band * bandRows * width;
+            int to = Math.min(height, (band + 1) * bandRows) * width;
+            int next = roots[band];
+            for (int p = from; p < to; p++) {
+                if (labels[p] == p + 1) {
+                    parent[p] = ++next;
+                }
+            }
+        });
+
+        int[][] bandPixels = new int[bands][];
+        int[] bandSizes = new int[bands];
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int from = band * bandRows * width;
+            int to = Math.min(height, (band + 1) * bandRows) * width;
+            int[] foreground = new int[64];
+            int n = 0;
+            for (int p = from; p < to; p++) {
+                if (labels[p] != 0) {
+                    labels[p] = parent[labels[p] - 1];
+                    if (n == foreground.length) {
+                        foreground = Arrays.copyOf(foreground, n * 2);
+                    }
+                    foreground[n++] = p;
+                }
+            }
+            bandPixels[band] = foreground;
+            bandSizes[band] = n;
+        });
+
+        // Listas de pixels por componente: as faixas são percorridas em ordem, o que preserva a ordem raster
+        int[] offsets = new int[count + 1];
+        int[] bounds = new int[4 * count];
+        for (int c = 0; c < count; c++) {
+            bounds[4 * c] = Integer.MAX_VALUE;
+            bounds[4 * c + 1] = Integer.MAX_VALUE;
+            bounds[4 * c + 2] = -1;
+            bounds[4 * c + 3] = -1;
+        }
+        for (int band = 0; band < bands; band++) {
+            for (int i = 0; i < bandSizes[band]; i++) {
+                int p = bandPixels[band][i];
+                int c = labels[p] - 1;
+                offsets[c + 1]++;
+                int x = p % width;
+                int y = p / width;
+                bounds[4 * c] = Math.min(bounds[4 * c], x);
+                bounds[4 * c + 1] = Math.min(bounds[4 * c + 1], y);
+                bounds[4 * c + 2] = Math.max(bounds[4 * c + 2], x);
+                bounds[4 * c + 3] = Math.max(bounds[4 * c + 3], y);
+            }
+        }
+        for (int c = 0; c < count; c++) {
+            offsets[c + 1] += offsets[c];
+        }
+        int[] pixels = new int[offsets[count]];
+        int[] cursor = Arrays.copyOf(offsets, count);
+        for (int band = 0; band < bands; band++) {
+            for (int i = 0; i < bandSizes[band]; i++) {
+                int p = bandPixels[band][i];
+                pixels[cursor[labels[p] - 1]++] = p;
+            }
+        }
+        return new ComponentLabeller(width, height, labels, count, offsets, pixels, bounds);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getComponentCount() {
+        return count;
+    }
+
+    // Rótulo do pixel (x, y): 0 para o fundo, 1..getComponentCount() para os componentes
+    public int getLabel(int x, int y) {
+        return labels[y * width + x];
+    }
+
+    // Componentes são indexados de 0 a getComponentCount() - 1 (rótulo - 1)
+    public int getSize(int component) {
+        return offsets[component + 1] - offsets[component];
+    }
+
+    // Índice (y * largura + x) do i-ésimo pixel do componente, em ordem raster
+    public int getPixel(int component, int i) {
+        return pixels[offsets[component] + i];
+    }
+
+    public int getMinX(int component) {
+        return bounds[4 * component];
+    }
+
+    public int getMinY(int component) {
+        return bounds[4 * component + 1];
+    }
+
+    public int getMaxX(int component) {
+        return bounds[4 * component + 2];
+    }
+
+    public int getMaxY(int component) {
+        return bounds[4 * component + 3];
+    }
+
+    // Une p com os vizinhos de primeiro plano na linha de cima: (x - 1), x e (x + 1)
+    private static void unionAbove(byte[] mask, int[] parent, int width, int x, int p) {
+        int above = p - width;
+        if (x > 0 && mask[above - 1] != 0) {
+            union(parent, p, above - 1);
+        }
+        if (mask[above] != 0) {
+            union(parent, p, above);
+        }
+        if (x < width - 1 && mask[above + 1] != 0) {
+            union(parent, p, above + 1);
+        }
+    }
+
+    // A raiz de maior índice passa a apontar para a de menor índice
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA < rootB) {
+            parent[rootB] = rootA;
+        } else if (rootB < rootA) {
+            parent[rootA] = rootB;
+        }
+    }
+
+    // Busca com compressão de caminho pela metade
+    private static int find(int[] parent, int p) {
+        while (parent[p] != p) {
+            parent[p] = parent[parent[p]];
+            p = parent[p];
+        }
+        return p;
+    }
+
+    // Busca sem escrita, usada enquanto outras faixas leem a mesma floresta
+    private static int root(int[] parent, int p) {
+        while (parent[p] != p) {
+            p = parent[p];
+        }
+        return p;
+    }
+}
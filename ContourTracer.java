@@ -0,0 +1,301 @@
+import ij.process.ImageProcessor;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Rastreador de contornos sem alocação por pixel: os pixels visitados ficam em um bitset compactado e as coordenadas
+// de todos os contornos em um único buffer int crescente (x0, y0, x1, y1, ...). Cada thread reutiliza o seu próprio
+// contexto (forCurrentThread), então os buffers só crescem até o tamanho da maior imagem processada por ela.
+// O resultado de trace() é válido até a próxima chamada na mesma thread.
+//
+// measure() percorre os mesmos contornos alimentando um ShapeAccumulator ponto a ponto; as coordenadas só são
+// guardadas se keepContours for verdadeiro (útil para depuração e para o AxesVerifier).
+//
+// Imagens grandes têm os componentes conexos rotulados em paralelo (ComponentLabeller) e cada componente é rastreado
+// em uma tarefa própria. Os contornos são entregues na ordem do pixel inicial, a mesma da varredura serial, então
+// contornos e medidas são idênticos nos dois caminhos.
+public class ContourTracer {
+
+    private static final int[] DIR_X = { 1, 1, 0, -1, -1, -1, 0, 1 };
+    private static final int[] DIR_Y = { 0, -1, -1, -1, 0, 1, 1, 1 };
+
+    // Imagens a partir deste número de pixels usam o caminho paralelo
+    private static final int PARALLEL_PIXELS = 1024 * 1024;
+
+    private static final ThreadLocal<ContourTracer> CONTEXT = ThreadLocal.withInitial(ContourTracer::new);
+
+    private long[] visited = new long[0];
+    private byte[] mask = new byte[0];
+    private int[] coordinates = new int[1024];
+    private int coordinateCount;
+    // Início de cada contorno em "coordinates" (em pontos); starts[count] marca o fim do último
+    private int[] starts = new int[64];
+    private int contourCount;
+    private final ShapeAccumulator shape = new ShapeAccumulator();
+    private boolean keepContours;
+    private ShapeAccumulator sink;
+
+    public static ContourTracer forCurrentThread() {
+        return CONTEXT.get();
+    }
+
+    public ContourTracer trace(ImageProcessor ip) {
+        run(ip, true, null);
+        return this;
+    }
+
+    // Medidas da imagem sem materializar os contornos; o acumulador é do contexto e vale até a próxima chamada
+    public ShapeAccumulator measure(ImageProcessor ip, boolean keepContours) {
+        shape.reset();
+        run(ip, keepContours, shape);
+        return shape;
+    }
+
+    private void run(ImageProcessor ip, boolean keepContours, ShapeAccumulator sink) {
+        this.keepContours = keepContours;
+        this.sink = sink;
+        int width = ip.getWidth();
+        int height = ip.getHeight();
+        int size = width * height;
+        byte[] pixels = foregroundMask(ip, size);
+        coordinateCount = 0;
+        contourCount = 0;
+        starts[0] = 0;
+
+        if (size >= PARALLEL_PIXELS && Runtime.getRuntime().availableProcessors() > 1) {
+            traceComponents(pixels, ComponentLabeller.label(pixels, width, height));
+        } else {
+            traceSerial(pixels, width, height);
+        }
+        this.sink = null;
+    }
+
+    private void traceSerial(byte[] pixels, int width, int height) {
+        int size = width * height;
+        int words = (size + 63) >>> 6;
+        if (visited.length < words) {
+            visited = new long[words];
+        } else {
+            Arrays.fill(visited, 0, words, 0L);
+        }
+
+        for (int y = 0; y < height; y++) {
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int index = offset + x;
+                if (pixels[index] != 0 && (visited[index >>> 6] & (1L << index)) == 0) {
+                    traceContour(pixels, width, height, x, y);
+                }
+            }
+        }
+    }
+
+    // Os componentes são rastreados em paralelo e os contornos reproduzidos em ordem do pixel inicial
+    private void traceComponents(byte[] pixels, ComponentLabeller components) {
+        int count = components.getComponentCount();
+        ComponentContours[] traced = new ComponentContours[count];
+        IntStream.range(0, count).parallel()
+                .forEach(c -> traced[c] = new ComponentContours(pixels, components, c));
+
+        int total = 0;
+        for (ComponentContours contours : traced) {
+            total += contours.count;
+        }
+        long[] order = new long[total];
+        int[] owner = new int[total];
+        for (int c = 0, id = 0; c < count; c++) {
+            for (int i = 0; i < traced[c].count; i++, id++) {
+                order[id] = ((long) traced[c].startPixels[i] << 32) | id;
+                owner[id] = c;
+            }
+        }
+        Arrays.sort(order);
+
+        int[] first = new int[count];
+        for (int c = 1; c < count; c++) {
+            first[c] = first[c - 1] + traced[c - 1].count;
+        }
+        for (long key : order) {
+            int id = (int) key;
+            ComponentContours contours = traced[owner[id]];
+            int contour = id - first[owner[id]];
+            for (int i = contours.starts[contour]; i < contours.starts[contour + 1]; i++) {
+                emit(contours.coordinates[2 * i], contours.coordinates[2 * i + 1]);
+            }
+            endContour();
+        }
+    }
+
+    public int getContourCount() {
+        return contourCount;
+    }
+
+    // Primeiro ponto do contorno "contour" em getCoordinates() (a coordenada x fica em 2 * início)
+    public int getStart(int contour) {
+        return starts[contour];
+    }
+
+    public int getLength(int contour) {
+        return starts[contour + 1] - starts[contour];
+    }
+
+    public int getPointCount() {
+        return coordinateCount / 2;
+    }
+
+    // Buffer interno compartilhado; não deve ser modificado nem guardado após a próxima chamada a trace()
+    public int[] getCoordinates() {
+        return coordinates;
+    }
+
+    // Pixels de borda são os diferentes de zero; processadores que não são de 8 bits são convertidos uma vez
+    private byte[] foregroundMask(ImageProcessor ip, int size) {
+        Object pixels = ip.getPixels();
+        if (pixels instanceof byte[]) {
+            return (byte[]) pixels;
+        }
+        if (mask.length < size) {
+            mask = new byte[size];
+        }
+        int width = ip.getWidth();
+        for (int i = 0; i < size; i++) {
+            mask[i] = ip.getPixel(i % width, i / width) > 0 ? (byte) 1 : 0;
+        }
+        return mask;
+    }
+
+    // Caminhada gulosa nas 8 direções a partir de (startX, startY), sempre para um vizinho de borda ainda não visitado
+    private void traceContour(byte[] pixels, int width, int height, int startX, int startY) {
+        int x = startX;
+        int y = startY;
+        int dir = 0;
+
+        do {
+            int index = y * width + x;
+            visited[index >>> 6] |= 1L << index;
+            emit(x, y);
+            boolean found = false;
+            for (int i = 0; i < 8; i++) {
+                int newX = x + DIR_X[dir];
+                int newY = y + DIR_Y[dir];
+                if (newX >= 0 && newX < width && newY >= 0 && newY < height) {
+                    int next = newY * width + newX;
+                    if (pixels[next] != 0 && (visited[next >>> 6] & (1L << next)) == 0) {
+                        x = newX;
+                        y = newY;
+                        found = true;
+                        break;
+                    }
+                }
+                dir = (dir + 1) % 8;
+            }
+            if (!found) {
+                break;
+            }
+        } while (x != startX || y != startY);
+
+        endContour();
+    }
+
+    private void emit(int x, int y) {
+        if (keepContours) {
+            if (coordinateCount + 2 > coordinates.length) {
+                coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+            }
+            coordinates[coordinateCount++] = x;
+            coordinates[coordinateCount++] = y;
+        }
+        if (sink != null) {
+            sink.addPoint(x, y);
+        }
+    }
+
+    private void endContour() {
+        if (sink != null) {
+            sink.endContour();
+        }
+        if (!keepContours) {
+            return;
+        }
+        if (contourCount + 2 > starts.length) {
+            starts = Arrays.copyOf(starts, starts.length * 2);
+        }
+        starts[++contourCount] = coordinateCount / 2;
+    }
+
+    // Contornos de um único componente. A caminhada é a mesma de traceContour, mas o mapa de visitados cobre só o
+    // retângulo envolvente do componente; como vizinhos de borda pertencem sempre ao mesmo componente, as caminhadas
+    // coincidem com as da varredura serial.
+    private static final class ComponentContours {
+
+        private int[] coordinates = new int[64];
+        private int coordinateCount;
+        // Início de cada contorno em pontos; starts[count] marca o fim do último
+        private int[] starts = new int[4];
+        private int[] startPixels = new int[4];
+        private int count;
+
+        ComponentContours(byte[] pixels, ComponentLabeller components, int component) {
+            int width = components.getWidth();
+            int height = components.getHeight();
+            int minX = components.getMinX(component);
+            int minY = components.getMinY(component);
+            int boxWidth = components.getMaxX(component) - minX + 1;
+            int boxHeight = components.getMaxY(component) - minY + 1;
+            long[] visited = new long[(int) (((long) boxWidth * boxHeight + 63) >>> 6)];
+
+            for (int p = 0; p < components.getSize(component); p++) {
+                int pixel = components.getPixel(component, p);
+                int startX = pixel % width;
+                int startY = pixel / width;
+                int local = (startY - minY) * boxWidth + (startX - minX);
+                if ((visited[local >>> 6] & (1L << local)) != 0) {
+                    continue;
+                }
+                if (count + 2 > starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                    startPixels = Arrays.copyOf(startPixels, starts.length);
+                }
+                startPixels[count] = pixel;
+
+                int x = startX;
+                int y = startY;
+                int dir = 0;
+                do {
+                    local = (y - minY) * boxWidth + (x - minX);
+                    visited[local >>> 6] |= 1L << local;
+                    append(x, y);
+                    boolean found = false;
+                    for (int i = 0; i < 8; i++) {
+                        int newX = x + DIR_X[dir];
+                        int newY = y + DIR_Y[dir];
+                        if (newX >= 0 && newX < width && newY >= 0 && newY < height
+                                && pixels[newY * width + newX] != 0) {
+                            int next = (newY - minY) * boxWidth + (newX - minX);
+                            if ((visited[next >>> 6] & (1L << next)) == 0) {
+                                x = newX;
+                                y = newY;
+                                found = true;
+                                break;
+                            }
+                        }
+                        dir = (dir + 1) % 8;
+                    }
+                    if (!found) {
+                        break;
+                    }
+                } while (x != startX || y != startY);
+
+                starts[++count] = coordinateCount / 2;
+            }
+        }
+
+        private void append(int x, int y) {
+            if (coordinateCount + 2 > coordinates.length) {
+                coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+            }
+            coordinates[coordinateCount++] = x;
+            coordinates[coordinateCount++] = y;
+        }
+    }
+}
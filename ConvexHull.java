@@ -0,0 +1,106 @@
+// Fecho convexo (cadeia monótona de Andrew) de pontos inteiros, com diâmetro e largura mínima por rotating calipers.
+// Os pontos chegam como chaves ((long) x << 32) | y já ordenadas, sem repetição.
+public class ConvexHull {
+
+    private final int[] xs;
+    private final int[] ys;
+    private final int count;
+
+    public ConvexHull(long[] sortedKeys, int n) {
+        int[] hx = new int[Math.max(2, 2 * n)];
+        int[] hy = new int[hx.length];
+        int k = 0;
+
+        // Cadeia inferior e depois superior; pontos colineares são descartados
+        for (int i = 0; i < n; i++) {
+            int x = keyX(sortedKeys[i]);
+            int y = keyY(sortedKeys[i]);
+            while (k >= 2 && cross(hx[k - 2], hy[k - 2], hx[k - 1], hy[k - 1], x, y) <= 0) {
+                k--;
+            }
+            hx[k] = x;
+            hy[k++] = y;
+        }
+        for (int i = n - 2, lower = k + 1; i >= 0; i--) {
+            int x = keyX(sortedKeys[i]);
+            int y = keyY(sortedKeys[i]);
+            while (k >= lower && cross(hx[k - 2], hy[k - 2], hx[k - 1], hy[k - 1], x, y) <= 0) {
+                k--;
+            }
+            hx[k] = x;
+            hy[k++] = y;
+        }
+        // O último ponto repete o primeiro
+        this.count = n <= 1 ? n : k - 1;
+        this.xs = hx;
+        this.ys = hy;
+    }
+
+    public static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    public static int keyX(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int keyY(long key) {
+        return (int) key;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Quadrado da maior distância entre dois pontos do conjunto (a distância máxima sempre ocorre entre vértices do fecho)
+    public long diameterSquared() {
+        if (count < 2) {
+            return 0;
+        }
+        if (count == 2) {
+            return distanceSquared(0, 1);
+        }
+        long best = 0;
+        int j = 1;
+        for (int i = 0; i < count; i++) {
+            int next = (i + 1) % count;
+            // Avança o ponto antípoda enquanto a área do triângulo com a aresta (i, next) crescer
+            while (area(i, next, (j + 1) % count) > area(i, next, j)) {
+                j = (j + 1) % count;
+            }
+            best = Math.max(best, Math.max(distanceSquared(i, j), distanceSquared(next, j)));
+        }
+        return best;
+    }
+
+    // Menor distância entre duas retas paralelas de apoio que envolvem o conjunto
+    public double minimumWidth() {
+        if (count < 3) {
+            return 0.0;
+        }
+        double best = Double.MAX_VALUE;
+        int j = 1;
+        for (int i = 0; i < count; i++) {
+            int next = (i + 1) % count;
+            while (area(i, next, (j + 1) % count) > area(i, next, j)) {
+                j = (j + 1) % count;
+            }
+            best = Math.min(best, area(i, next, j) / Math.sqrt(distanceSquared(i, next)));
+        }
+        return best;
+    }
+
+    private long area(int a, int b, int c) {
+        return Math.abs(cross(xs[a], ys[a], xs[b], ys[b], xs[c], ys[c]));
+    }
+
+    private long distanceSquared(int a, int b) {
+        long dx = xs[a] - xs[b];
+        long dy = ys[a] - ys[b];
+        return dx * dx + dy * dy;
+    }
+
+    private static long cross(int ox, int oy, int ax, int ay, int bx, int by) {
+        return (long) (ax - ox) * (by - oy) - (long) (ay - oy) * (bx - ox);
+    }
+}
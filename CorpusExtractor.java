@@ -0,0 +1,152 @@
+import ij.IJ;
+import ij.ImagePlus;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class CorpusExtractor {
+
+    // Extrai os descritores de todas as imagens de "searchImagesDir" usando "workers" threads.
+    // Os resultados entram na matriz em ordem alfabética dos arquivos, independente da ordem de término.
+    // Arquivos que não mudaram desde a última execução são lidos do índice binário do diretório.
+    public static void extract(String searchImagesDir, FeatureMatrix featureVectors, int workers)
+            throws InterruptedException, IOException {
+        String[] paths = listImages(searchImagesDir);
+        Path indexFile = new File(searchImagesDir, DescriptorIndex.FILE_NAME).toPath();
+        String configuration = ImageDescriptorExtractor.getConfiguration();
+        int dimensions = featureVectors.getDimensions();
+        DescriptorIndex previous = DescriptorIndex.load(indexFile, configuration, dimensions);
+
+        long[] sizes = new long[paths.length];
+        long[] lastModified = new long[paths.length];
+        double[][] descriptors = new double[paths.length][];
+        List<Integer> pending = new ArrayList<>();
+        int previousSize = previous != null ? previous.size() : -1;
+        try {
+            for (int i = 0; i < paths.length; i++) {
+                File file = new File(searchImagesDir, paths[i]);
+                sizes[i] = file.length();
+                lastModified[i] = file.lastModified();
+                int entry = previous != null ? previous.find(paths[i], sizes[i], lastModified[i]) : -1;
+                if (entry < 0) {
+                    pending.add(i);
+                } else if (!previous.isSkipped(entry)) {
+                    descriptors[i] = previous.getDescriptors(entry);
+                }
+            }
+        } finally {
+            // O mapeamento é liberado antes que o arquivo possa ser substituído abaixo
+            if (previous != null) {
+                previous.close();
+            }
+        }
+
+        extract(searchImagesDir, paths, pending, descriptors, workers);
+
+        DescriptorIndex index = new DescriptorIndex(configuration, dimensions, featureVectors.getPrecision());
+        for (int i = 0; i < paths.length; i++) {
+            index.add(paths[i], sizes[i], lastModified[i], descriptors[i]);
+            if (descriptors[i] != null) {
+                featureVectors.add(paths[i], descriptors[i]); // Armazenar o caminho da imagem junto ao vetor
+            }
+        }
+
+        if (!pending.isEmpty() || previousSize != paths.length) {
+            try {
+                index.write(indexFile);
+            } catch (IOException e) {
+                IJ.log("Could not write descriptor index " + indexFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Nomes dos arquivos do diretório em ordem alfabética, sem o próprio índice
+    static String[] listImages(String searchImagesDir) {
+        String[] paths = Objects.requireNonNull(new File(searchImagesDir).list(
+                (dir, name) -> !name.startsWith(DescriptorIndex.FILE_NAME)));
+        Arrays.sort(paths);
+        return paths;
+    }
+
+    private static void extract(String searchImagesDir, String[] paths, List<Integer> pending,
+            double[][] descriptors, int workers) throws InterruptedException {
+        if (workers <= 1 || pending.size() <= 1) {
+            for (int i : pending) {
+                descriptors[i] = extract(searchImagesDir, paths[i]);
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "descriptor-extractor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // Cada tarefa abre sua própria imagem, então no máximo "workers" imagens ficam em memória ao mesmo tempo
+            List<Future<double[]>> futures = new ArrayList<>(pending.size());
+            for (int i : pending) {
+                futures.add(executor.submit(() -> extract(searchImagesDir, paths[i])));
+            }
+            for (int j = 0; j < pending.size(); j++) {
+                descriptors[pending.get(j)] = get(futures.get(j));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Retorna null se o arquivo não for uma imagem ou se a imagem for descartada.
+    // Imagens de 8 bits são decodificadas direto em um raster reaproveitado (RasterDecoder); as demais, e as que
+    // o ImageIO não consegue ler, passam pelo IJ.openImage.
+    static double[] extract(String searchImagesDir, String path) {
+        long start = PipelineMetrics.start();
+        RasterDecoder decoder = RasterDecoder.forCurrentThread();
+        boolean decoded;
+        try {
+            decoded = decoder.decode(new File(searchImagesDir + path));
+        } catch (IOException | RuntimeException e) {
+            decoded = false;
+        }
+        ImagePlus image = decoded ? null : IJ.openImage(searchImagesDir + path);
+        PipelineMetrics.stop(PipelineMetrics.Stage.OPEN_IMAGE, start);
+        if (!decoded && image == null) {
+            PipelineMetrics.imageSkipped();
+            return null;
+        }
+        try {
+            return decoded
+                    ? ImageDescriptorExtractor.extractDescriptors(decoder.getPixels(), decoder.getWidth(),
+                            decoder.getHeight())
+                    : ImageDescriptorExtractor.extractDescriptors(image);
+        } catch (IllegalArgumentException e) {
+            IJ.log("Skipped image " + path + " due to: " + e.getMessage());
+            PipelineMetrics.imageSkipped();
+            return null;
+        }
+    }
+
+    private static double[] get(Future<double[]> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+import ij.process.ImageProcessor;
+
+import java.awt.Rectangle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Cache LRU em memória dos descritores já extraídos, indexado por um hash de 64 bits dos pixels decodificados.
+// Uma imagem repetida (a mesma referência em várias execuções do plugin, ou o mesmo arquivo em vários diretórios)
+// custa uma passada de hash em vez de suavização, Sobel e contornos.
+//
+// A chave inclui o tamanho, o tipo de pixel, o retângulo da ROI (a suavização respeita a ROI) e a configuração do
+// extrator, então ligar o pipeline fundido não reaproveita descritores do pipeline original. A extração suaviza uma
+// cópia, então a mesma imagem extraída de novo tem a mesma chave (verificado pelo CacheVerifier).
+//
+// O cache compartilhado (shared) começa com DEFAULT_MAXIMUM_SIZE entradas; setMaximumSize(0) o desliga.
+public class DescriptorCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 4096;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    // Constantes do xxHash64
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+
+    private static final DescriptorCache SHARED = new DescriptorCache(DEFAULT_MAXIMUM_SIZE);
+
+    public static final class Key {
+        private final long hash;
+        private final int width;
+        private final int height;
+        private final int bitDepth;
+        private final String configuration;
+
+        Key(long hash, int width, int height, int bitDepth, String configuration) {
+            this.hash = hash;
+            this.width = width;
+            this.height = height;
+            this.bitDepth = bitDepth;
+            this.configuration = configuration;
+        }
+
+        public long getHash() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return hash == key.hash && width == key.width && height == key.height && bitDepth == key.bitDepth
+                    && configuration.equals(key.configuration);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash);
+        }
+    }
+
+    private final Map<Key, double[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int maximumSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public DescriptorCache(int maximumSize) {
+        setMaximumSize(maximumSize);
+    }
+
+    public static DescriptorCache shared() {
+        return SHARED;
+    }
+
+    public synchronized void setMaximumSize(int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("Invalid cache size: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        trim();
+    }
+
+    public synchronized int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public synchronized boolean isEnabled() {
+        return maximumSize > 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Cópia dos descritores da imagem, ou null (conta como falta) se ela ainda não foi extraída
+    public double[] get(Key key) {
+        double[] descriptors;
+        synchronized (this) {
+            descriptors = entries.get(key);
+        }
+        if (descriptors == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return descriptors.clone();
+    }
+
+    public synchronized void put(Key key, double[] descriptors) {
+        if (maximumSize == 0) {
+            return;
+        }
+        entries.put(key, descriptors.clone());
+        trim();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    // Remove as entradas menos usadas recentemente até caber no limite
+    private void trim() {
+        Iterator<double[]> iterator = entries.values().iterator();
+        while (entries.size() > maximumSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    // Chave dos pixels atuais do processador; deve ser chamada antes de qualquer etapa que altere a imagem
+    public static Key key(ImageProcessor ip, String configuration) {
+        Hasher hasher = new Hasher();
+        Object pixels = ip.getPixels();
+        if (pixels instanceof byte[]) {
+            hasher.update((byte[]) pixels);
+        } else if (pixels instanceof short[]) {
+            hasher.update((short[]) pixels);
+        } else if (pixels instanceof int[]) {
+            hasher.update((int[]) pixels);
+        } else if (pixels instanceof float[]) {
+            hasher.update((float[]) pixels);
+        } else {
+            throw new IllegalArgumentException("Unsupported pixel type: " + pixels);
+        }
+        Rectangle roi = ip.getRoi();
+        hasher.update(((long) roi.x << 32) | (roi.y & 0xffffffffL));
+        hasher.update(((long) roi.width << 32) | (roi.height & 0xffffffffL));
+        return new Key(hasher.finish(), ip.getWidth(), ip.getHeight(), ip.getBitDepth(), configuration);
+    }
+
+    // Hash de 64 bits no estilo do xxHash64: 4 acumuladores independentes consumindo palavras de 8 bytes
+    private static final class Hasher {
+        private long v1 = PRIME1 + PRIME2;
+        private long v2 = PRIME2;
+        private long v3 = 0;
+        private long v4 = -PRIME1;
+        private long words;
+
+        void update(byte[] data) {
+            int length = data.length;
+            int i = 0;
+            for (; i + 32 <= length; i += 32) {
+                v1 = round(v1, (long) LONGS.get(data, i));
+                v2 = round(v2, (long) LONGS.get(data, i + 8));
+                v3 = round(v3, (long) LONGS.get(data, i + 16));
+                v4 = round(v4, (long) LONGS.get(data, i + 24));
+                words += 4;
+            }
+            for (; i + 8 <= length; i += 8) {
+                update((long) LONGS.get(data, i));
+            }
+            long tail = 0;
+            for (int shift = 0; i < length; i++, shift += 8) {
+                tail |= (data[i] & 0xffL) << shift;
+            }
+            update(tail);
+        }
+
+        void update(short[] data) {
+            int i = 0;
+            for (; i + 4 <= data.length; i += 4) {
+                update((data[i] & 0xffffL) | (data[i + 1] & 0xffffL) << 16 | (data[i + 2] & 0xffffL) << 32
+                        | (data[i + 3] & 0xffffL) << 48);
+            }
+            long tail = 0;
+            for (int shift = 0; i < data.length; i++, shift += 16) {
+                tail |= (data[i] & 0xffffL) << shift;
+            }
+            update(tail);
+        }
+
+        void update(int[] data) {
+            int i = 0;
+            for (; i + 2 <= data.length; i += 2) {
+                update((data[i] & 0xffffffffL) | (long) data[i + 1] << 32);
+            }
+            update(i < data.length ? data[i] & 0xffffffffL : 0L);
+        }
+
+        void update(float[] data) {
+            int i = 0;
+            for (; i + 2 <= data.length; i += 2) {
+                update((Float.floatToRawIntBits(data[i]) & 0xffffffffL)
+                        | (long) Float.floatToRawIntBits(data[i + 1]) << 32);
+            }
+            update(i < data.length ? Float.floatToRawIntBits(data[i]) & 0xffffffffL : 0L);
+        }
+
+        // Palavras avulsas alternam entre os acumuladores, na mesma ordem do laço de 32 bytes
+        void update(long word) {
+            switch ((int) (words++ & 3)) {
+                case 0:
+                    v1 = round(v1, word);
+                    break;
+                case 1:
+                    v2 = round(v2, word);
+                    break;
+                case 2:
+                    v3 = round(v3, word);
+                    break;
+                default:
+                    v4 = round(v4, word);
+            }
+        }
+
+        long finish() {
+            long h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12)
+                    + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+            h += words * 8;
+            h ^= h >>> 33;
+            h *= PRIME2;
+            h ^= h >>> 29;
+            h *= PRIME3;
+            return h ^ (h >>> 32);
+        }
+
+        private static long round(long acc, long word) {
+            return Long.rotateLeft(acc + word * PRIME2, 31) * PRIME1;
+        }
+
+        private static long merge(long h, long v) {
+            return (h ^ round(0, v)) * PRIME1 + PRIME4;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d entries, %d hits, %d misses (%.1f%%), %d evictions",
+                size(), getHits(), getMisses(), 100 * getHitRatio(), getEvictions());
+    }
+}
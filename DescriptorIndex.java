@@ -0,0 +1,409 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+// Índice binário de descritores por diretório. Formato (big-endian):
+//   cabeçalho: magic, versão, configuração do extrator, dimensões, precisão, número de entradas
+//   tabela:    uma entrada de tamanho fixo por arquivo, em ordem crescente dos bytes UTF-8 do caminho: posição
+//              e tamanho do caminho no bloco de nomes, tamanho do arquivo, data de modificação, flag de descarte
+//   nomes:     tamanho do bloco e os caminhos em UTF-8, concatenados
+//   bloco:     descritores empacotados (double ou float), entrada por entrada
+//
+// Um índice carregado com load não copia nada para o heap: find faz busca binária na tabela e getDescriptors lê o
+// bloco diretamente do arquivo mapeado. close libera o mapeamento, o que é necessário antes de substituir o arquivo
+// (no Windows um arquivo mapeado não pode ser sobrescrito); close espera as leituras em andamento, e uma leitura
+// depois dele lança IllegalStateException em vez de acessar memória já liberada. Um índice criado com o construtor
+// é montado em memória com add e gravado com write, e não é thread-safe.
+public class DescriptorIndex implements Closeable {
+
+    public static final String FILE_NAME = "descriptors.idx";
+
+    private static final int MAGIC = 0x47444958; // "GDIX"
+    private static final int VERSION = 2;
+    // Posição do caminho (int), tamanho do caminho (int), tamanho (long), data (long), descarte (byte)
+    private static final int ENTRY_BYTES = 4 + 4 + 8 + 8 + 1;
+
+    private final String configuration;
+    private final int dimensions;
+    private final FeatureMatrix.Precision precision;
+    private int count;
+
+    // Índice em memória (construtor + add)
+    private String[] paths;
+    private long[] sizes;
+    private long[] lastModified;
+    private boolean[] skipped;
+    private double[] descriptors;
+    private Map<String, Integer> positions;
+
+    // Índice mapeado (load): só leituras absolutas, então várias threads podem consultar ao mesmo tempo; cada
+    // leitura segura o lock de leitura e close o de escrita
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private MappedByteBuffer mapped;
+    private int tableOffset;
+    private int namesOffset;
+    private int blockOffset;
+
+    public DescriptorIndex(String configuration, int dimensions, FeatureMatrix.Precision precision) {
+        this.configuration = configuration;
+        this.dimensions = dimensions;
+        this.precision = precision;
+        paths = new String[16];
+        sizes = new long[16];
+        lastModified = new long[16];
+        skipped = new boolean[16];
+        descriptors = new double[16 * dimensions];
+    }
+
+    private DescriptorIndex(String configuration, int dimensions, FeatureMatrix.Precision precision,
+            MappedByteBuffer mapped, int count, int tableOffset, int namesOffset, int blockOffset) {
+        this.configuration = configuration;
+        this.dimensions = dimensions;
+        this.precision = precision;
+        this.mapped = mapped;
+        this.count = count;
+        this.tableOffset = tableOffset;
+        this.namesOffset = namesOffset;
+        this.blockOffset = blockOffset;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public String getPath(int entry) {
+        if (paths != null) {
+            return paths[entry];
+        }
+        return read(buffer -> {
+            int position = tableOffset + entry * ENTRY_BYTES;
+            byte[] bytes = new byte[buffer.getInt(position + 4)];
+            int offset = namesOffset + buffer.getInt(position);
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(offset + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        });
+    }
+
+    public long getSize(int entry) {
+        return paths != null ? sizes[entry] : read(buffer -> buffer.getLong(tableOffset + entry * ENTRY_BYTES + 8));
+    }
+
+    public long getLastModified(int entry) {
+        return paths != null ? lastModified[entry]
+                : read(buffer -> buffer.getLong(tableOffset + entry * ENTRY_BYTES + 16));
+    }
+
+    // Entradas descartadas (arquivos que não são imagens ou imagens rejeitadas) não têm descritores
+    public boolean isSkipped(int entry) {
+        return paths != null ? skipped[entry] : read(buffer -> buffer.get(tableOffset + entry * ENTRY_BYTES + 24) != 0);
+    }
+
+    public double[] getDescriptors(int entry) {
+        if (paths != null) {
+            return Arrays.copyOfRange(descriptors, entry * dimensions, (entry + 1) * dimensions);
+        }
+        return read(buffer -> {
+            double[] vector = new double[dimensions];
+            if (precision == FeatureMatrix.Precision.DOUBLE) {
+                int offset = blockOffset + entry * dimensions * Double.BYTES;
+                for (int d = 0; d < dimensions; d++) {
+                    vector[d] = buffer.getDouble(offset + d * Double.BYTES);
+                }
+            } else {
+                int offset = blockOffset + entry * dimensions * Float.BYTES;
+                for (int d = 0; d < dimensions; d++) {
+                    vector[d] = buffer.getFloat(offset + d * Float.BYTES);
+                }
+            }
+            return vector;
+        });
+    }
+
+    // Índice da entrada se o arquivo não mudou desde a extração (mesmo caminho, tamanho e data), senão -1
+    public int find(String path, long size, long modified) {
+        int entry = paths != null ? findInMemory(path) : findMapped(path.getBytes(StandardCharsets.UTF_8));
+        if (entry < 0 || getSize(entry) != size || getLastModified(entry) != modified) {
+            return -1;
+        }
+        return entry;
+    }
+
+    // "descriptors" nulo registra o arquivo como descartado
+    public void add(String path, long size, long modified, double[] entryDescriptors) {
+        if (paths == null) {
+            throw new IllegalStateException("Loaded descriptor index is read-only");
+        }
+        if (entryDescriptors != null && entryDescriptors.length != dimensions) {
+            throw new IllegalArgumentException(
+                    "Vector has " + entryDescriptors.length + " dimensions, expected " + dimensions);
+        }
+        if (count == paths.length) {
+            int capacity = paths.length * 2;
+            paths = Arrays.copyOf(paths, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            lastModified = Arrays.copyOf(lastModified, capacity);
+            skipped = Arrays.copyOf(skipped, capacity);
+            descriptors = Arrays.copyOf(descriptors, capacity * dimensions);
+        }
+        paths[count] = path;
+        sizes[count] = size;
+        lastModified[count] = modified;
+        skipped[count] = entryDescriptors == null;
+        if (entryDescriptors != null) {
+            System.arraycopy(entryDescriptors, 0, descriptors, count * dimensions, dimensions);
+        }
+        if (positions != null) {
+            positions.put(path, count);
+        }
+        count++;
+    }
+
+    // Copia as entradas válidas para a matriz, na ordem do índice
+    public void addTo(FeatureMatrix featureVectors) {
+        for (int i = 0; i < count; i++) {
+            if (!isSkipped(i)) {
+                featureVectors.add(getPath(i), getDescriptors(i));
+            }
+        }
+    }
+
+    // Libera o mapeamento depois que as leituras em andamento terminam; depois disso um índice carregado não pode
+    // mais ser consultado
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            MappedByteBuffer buffer = mapped;
+            mapped = null;
+            if (buffer != null) {
+                unmap(buffer);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Retorna null se o arquivo não existir ou tiver sido gerado com outro formato ou configuração
+    public static DescriptorIndex load(Path file, String configuration, int dimensions) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        MappedByteBuffer buffer = null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < 8 || length > Integer.MAX_VALUE) {
+                return null;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            ByteBuffer header = buffer.duplicate();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                unmap(buffer);
+                return null;
+            }
+            if (!configuration.equals(readString(header)) || header.getInt() != dimensions) {
+                unmap(buffer);
+                return null;
+            }
+            int precisionOrdinal = header.get();
+            int entries = header.getInt();
+            FeatureMatrix.Precision[] precisions = FeatureMatrix.Precision.values();
+
+            // Confere os tamanhos declarados contra o tamanho do arquivo antes de usá-los
+            int tableOffset = header.position();
+            long namesPosition = tableOffset + (long) entries * ENTRY_BYTES;
+            if (precisionOrdinal < 0 || precisionOrdinal >= precisions.length || entries < 0
+                    || namesPosition + 4 > length) {
+                unmap(buffer);
+                return null;
+            }
+            FeatureMatrix.Precision precision = precisions[precisionOrdinal];
+            int namesLength = buffer.getInt((int) namesPosition);
+            long namesOffset = namesPosition + 4;
+            long blockOffset = namesOffset + namesLength;
+            int valueBytes = precision == FeatureMatrix.Precision.DOUBLE ? Double.BYTES : Float.BYTES;
+            if (namesLength < 0 || blockOffset + (long) entries * dimensions * valueBytes != length) {
+                unmap(buffer);
+                return null;
+            }
+            for (int i = 0; i < entries; i++) {
+                int position = tableOffset + i * ENTRY_BYTES;
+                int pathOffset = buffer.getInt(position);
+                int pathLength = buffer.getInt(position + 4);
+                if (pathOffset < 0 || pathLength < 0 || (long) pathOffset + pathLength > namesLength) {
+                    unmap(buffer);
+                    return null;
+                }
+            }
+            return new DescriptorIndex(configuration, dimensions, precision, buffer, entries, tableOffset,
+                    (int) namesOffset, (int) blockOffset);
+        } catch (RuntimeException e) {
+            // Arquivo truncado ou corrompido: trata como ausente para que o diretório seja reprocessado
+            if (buffer != null) {
+                unmap(buffer);
+            }
+            return null;
+        }
+    }
+
+    // Grava em um arquivo temporário e o move sobre o destino, para que um leitor nunca veja um índice pela metade.
+    // Um índice carregado do mesmo arquivo precisa ser fechado antes.
+    public void write(Path file) throws IOException {
+        if (paths == null) {
+            throw new IllegalStateException("Loaded descriptor index is read-only");
+        }
+        // A tabela fica em ordem dos bytes UTF-8 dos caminhos, a mesma ordem usada pela busca binária do find
+        byte[][] names = new byte[count][];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = paths[i].getBytes(StandardCharsets.UTF_8);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> names[i], Arrays::compareUnsigned));
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream stream = Files.newOutputStream(temp);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, configuration);
+            out.writeInt(dimensions);
+            out.writeByte(precision.ordinal());
+            out.writeInt(count);
+            int nameOffset = 0;
+            for (int i : order) {
+                out.writeInt(nameOffset);
+                out.writeInt(names[i].length);
+                out.writeLong(sizes[i]);
+                out.writeLong(lastModified[i]);
+                out.writeByte(skipped[i] ? 1 : 0);
+                nameOffset += names[i].length;
+            }
+            out.writeInt(nameOffset);
+            for (int i : order) {
+                out.write(names[i]);
+            }
+            for (int i : order) {
+                for (int d = 0; d < dimensions; d++) {
+                    if (precision == FeatureMatrix.Precision.DOUBLE) {
+                        out.writeDouble(descriptors[i * dimensions + d]);
+                    } else {
+                        out.writeFloat((float) descriptors[i * dimensions + d]);
+                    }
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Sem o lock, close poderia desfazer o mapeamento no meio de uma leitura e derrubar a JVM
+    private <T> T read(Function<ByteBuffer, T> reader) {
+        lock.readLock().lock();
+        try {
+            if (mapped == null) {
+                throw new IllegalStateException("Descriptor index is closed");
+            }
+            return reader.apply(mapped);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int findInMemory(String path) {
+        if (positions == null) {
+            positions = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                positions.put(paths[i], i);
+            }
+        }
+        Integer entry = positions.get(path);
+        return entry != null ? entry : -1;
+    }
+
+    // Busca binária na tabela comparando os bytes UTF-8 diretamente no arquivo mapeado
+    private int findMapped(byte[] path) {
+        return read(buffer -> findMapped(buffer, path));
+    }
+
+    private int findMapped(ByteBuffer buffer, byte[] path) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int position = tableOffset + mid * ENTRY_BYTES;
+            int offset = namesOffset + buffer.getInt(position);
+            int length = buffer.getInt(position + 4);
+            int cmp = compare(buffer, offset, length, path);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static int compare(ByteBuffer buffer, int offset, int length, byte[] path) {
+        int common = Math.min(length, path.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Byte.compareUnsigned(buffer.get(offset + i), path[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, path.length);
+    }
+
+    // Sem API pública para desfazer o mapeamento no Java 17; sun.misc.Unsafe.invokeCleaner (módulo jdk.unsupported)
+    // é acessado por reflexão. Se não estiver disponível, o mapeamento só é liberado pelo coletor de lixo.
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(field.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Fica para o coletor de lixo
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
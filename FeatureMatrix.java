@@ -0,0 +1,172 @@
+import java.util.Arrays;
+import java.util.List;
+
+public class FeatureMatrix {
+
+    public enum Layout {
+        ROW_MAJOR, COLUMN_MAJOR
+    }
+
+    public enum Precision {
+        DOUBLE, FLOAT
+    }
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final int dimensions;
+    private final Layout layout;
+    private final Precision precision;
+
+    // Todos os vetores ficam em um único array primitivo; os IDs ficam em um array paralelo
+    private double[] doubleData;
+    private float[] floatData;
+    private String[] ids;
+    private int rows;
+    private int capacity;
+
+    public FeatureMatrix(int dimensions) {
+        this(dimensions, Layout.ROW_MAJOR, Precision.DOUBLE, DEFAULT_CAPACITY);
+    }
+
+    public FeatureMatrix(int dimensions, Layout layout, Precision precision, int initialCapacity) {
+        if (dimensions < 1) {
+            throw new IllegalArgumentException("Invalid number of dimensions: " + dimensions);
+        }
+        this.dimensions = dimensions;
+        this.layout = layout;
+        this.precision = precision;
+        this.capacity = Math.max(1, initialCapacity);
+        this.ids = new String[capacity];
+        if (precision == Precision.DOUBLE) {
+            doubleData = new double[capacity * dimensions];
+        } else {
+            floatData = new float[capacity * dimensions];
+        }
+    }
+
+    public static FeatureMatrix of(List<double[]> featureVectors) {
+        int dimensions = featureVectors.isEmpty() ? 1 : featureVectors.get(0).length;
+        FeatureMatrix matrix = new FeatureMatrix(dimensions, Layout.ROW_MAJOR, Precision.DOUBLE,
+                featureVectors.size());
+        for (int i = 0; i < featureVectors.size(); i++) {
+            matrix.add("Image " + (i + 1), featureVectors.get(i));
+        }
+        return matrix;
+    }
+
+    public int add(String id, double[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException(
+                    "Vector has " + vector.length + " dimensions, expected " + dimensions);
+        }
+        if (rows == capacity) {
+            grow(capacity * 2);
+        }
+        int row = rows++;
+        ids[row] = id;
+        for (int d = 0; d < dimensions; d++) {
+            set(row, d, vector[d]);
+        }
+        return row;
+    }
+
+    public double get(int row, int dimension) {
+        int index = index(row, dimension);
+        return precision == Precision.DOUBLE ? doubleData[index] : floatData[index];
+    }
+
+    public double[] getRow(int row, double[] out) {
+        for (int d = 0; d < dimensions; d++) {
+            out[d] = get(row, d);
+        }
+        return out;
+    }
+
+    public double[] getRow(int row) {
+        return getRow(row, new double[dimensions]);
+    }
+
+    public String getId(int row) {
+        return ids[row];
+    }
+
+    public int size() {
+        return rows;
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    // Acesso direto ao armazenamento para os kernels de distância (null se a precisão não corresponder)
+    double[] doubleData() {
+        return doubleData;
+    }
+
+    float[] floatData() {
+        return floatData;
+    }
+
+    // Distância entre dois elementos consecutivos de uma mesma linha e entre linhas consecutivas
+    int dimensionStride() {
+        return layout == Layout.ROW_MAJOR ? 1 : capacity;
+    }
+
+    int rowStride() {
+        return layout == Layout.ROW_MAJOR ? dimensions : 1;
+    }
+
+    int index(int row, int dimension) {
+        return layout == Layout.ROW_MAJOR ? row * dimensions + dimension : dimension * capacity + row;
+    }
+
+    public void trimToSize() {
+        if (rows < capacity) {
+            grow(Math.max(1, rows));
+        }
+    }
+
+    private void set(int row, int dimension, double value) {
+        int index = index(row, dimension);
+        if (precision == Precision.DOUBLE) {
+            doubleData[index] = value;
+        } else {
+            floatData[index] = (float) value;
+        }
+    }
+
+    private void grow(int newCapacity) {
+        ids = Arrays.copyOf(ids, newCapacity);
+        if (layout == Layout.ROW_MAJOR) {
+            if (precision == Precision.DOUBLE) {
+                doubleData = Arrays.copyOf(doubleData, newCapacity * dimensions);
+            } else {
+                floatData = Arrays.copyOf(floatData, newCapacity * dimensions);
+            }
+        } else {
+            // Em column-major cada dimensão ocupa um bloco de tamanho "capacity", que precisa ser realocado
+            if (precision == Precision.DOUBLE) {
+                double[] data = new double[newCapacity * dimensions];
+                for (int d = 0; d < dimensions; d++) {
+                    System.arraycopy(doubleData, d * capacity, data, d * newCapacity, rows);
+                }
+                doubleData = data;
+            } else {
+                float[] data = new float[newCapacity * dimensions];
+                for (int d = 0; d < dimensions; d++) {
+                    System.arraycopy(floatData, d * capacity, data, d * newCapacity, rows);
+                }
+                floatData = data;
+            }
+        }
+        capacity = newCapacity;
+    }
+}
@@ -0,0 +1,275 @@
+import ij.IJ;
+import ij.ImagePlus;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+// Ponto de entrada sem interface gráfica: mesma extração e busca do plugin, com resultados em JSON Lines.
+//
+// Uso: java -cp ij.jar:. GeometricDescriptorsCLI --dir <acervo> [--k 3] [--metric euclidean]
+//          [--threads N] [--out arquivo.jsonl] [--fused] [--metrics metricas.json]
+//          [--metrics-period segundos] [--cache-size N] [--pyramid maxPixels]
+//          [--index linear|kdtree|vptree|int8|int16]
+//          <imagem de referência>...
+//
+// Cada linha da saída corresponde a uma imagem de referência, na ordem dos argumentos:
+//   {"reference":"a.gif","descriptors":[...],"neighbors":[{"image":"b.gif","distance":1.5},...]}
+// Referências que não puderem ser abertas ou processadas geram {"reference":"...","error":"..."}.
+// Com --metrics, o PipelineMetrics é ligado: um resumo vai para o log (stderr) e para o arquivo JSON a cada
+// período (padrão 10 s) e uma última vez ao final, com os totais.
+// --cache-size limita o DescriptorCache (imagens repetidas entre acervo e referências); 0 o desliga.
+// --pyramid reduz as imagens com mais de maxPixels pixels antes da extração. É experimental e fica desligado por
+// padrão: os descritores não são invariantes à escala e mudam muito (ver PyramidAccuracyReport), então o acervo e
+// as referências precisam usar o mesmo modo.
+// --index escolhe a busca: "linear" (padrão, varredura em lote do KNNFinder), "kdtree" (KDTreeIndex) ou "vptree"
+// (VPTreeIndex); as árvores devolvem os mesmos vizinhos da varredura (ver IndexVerifier). "int8" e "int16" usam o
+// QuantizedIndex, aproximado: os melhores candidatos da varredura quantizada são reordenados pela distância exata.
+public class GeometricDescriptorsCLI {
+
+    private static final String USAGE = "Usage: GeometricDescriptorsCLI --dir <directory> [--k <k>]"
+            + " [--metric euclidean|manhattan] [--threads <n>] [--out <file>] [--fused] [--metrics <file>]"
+            + " [--metrics-period <seconds>] [--cache-size <entries>] [--pyramid <max pixels>]"
+            + " [--index linear|kdtree|vptree|int8|int16] <reference image>...";
+
+    private static final List<String> INDEXES = Arrays.asList("linear", "kdtree", "vptree", "int8", "int16");
+
+    // Candidatos reordenados por vizinho pedido nos índices quantizados; com estes valores o QuantizationReport
+    // mede recall@10 acima de 0,98 (INT8) e 0,99 (INT16) em 10⁶ vetores
+    private static final int INT8_RERANK = 64;
+    private static final int INT16_RERANK = 4;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        String searchImagesDir = null;
+        String output = null;
+        String metrics = null;
+        long metricsPeriod = 10;
+        String distanceMetric = "euclidean";
+        String index = "linear";
+        int k = 3;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> references = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--dir":
+                        searchImagesDir = args[++i];
+                        break;
+                    case "--k":
+                        k = Integer.parseInt(args[++i]);
+                        break;
+                    case "--metric":
+                        distanceMetric = args[++i];
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--out":
+                        output = args[++i];
+                        break;
+                    case "--fused":
+                        ImageDescriptorExtractor.setFusedPipeline(true);
+                        break;
+                    case "--metrics":
+                        metrics = args[++i];
+                        break;
+                    case "--metrics-period":
+                        metricsPeriod = Long.parseLong(args[++i]);
+                        break;
+                    case "--cache-size":
+                        DescriptorCache.shared().setMaximumSize(Integer.parseInt(args[++i]));
+                        break;
+                    case "--pyramid":
+                        ImageDescriptorExtractor.setPyramidMaxPixels(Integer.parseInt(args[++i]));
+                        break;
+                    case "--index":
+                        index = args[++i];
+                        break;
+                    default:
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option: " + args[i]);
+                        }
+                        references.add(args[i]);
+                }
+            }
+            if (searchImagesDir == null || references.isEmpty()) {
+                throw new IllegalArgumentException("Missing directory or reference images");
+            }
+            KNNFinder.Metric.fromName(distanceMetric);
+            if (k < 1) {
+                throw new IllegalArgumentException("Invalid value of k: " + k);
+            }
+            if (!INDEXES.contains(index)) {
+                throw new IllegalArgumentException("Unknown index: " + index);
+            }
+            if (metricsPeriod < 1) {
+                throw new IllegalArgumentException("Invalid metrics period: " + metricsPeriod);
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println(e instanceof ArrayIndexOutOfBoundsException
+                    ? "Missing value for option " + args[args.length - 1] : e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        // Sem ImageJ aberto, IJ.log escreve em System.out; os registros vão para stderr para não misturar com os resultados
+        PrintStream stdout = System.out;
+        System.setOut(System.err);
+        Path metricsFile = metrics != null ? Paths.get(metrics) : null;
+        if (metricsFile != null) {
+            PipelineMetrics.get().startReporting(metricsPeriod, true, metricsFile);
+        }
+        // O relatório final é gravado antes de sair, também quando a execução falha
+        int exitCode = 0;
+        try {
+            run(searchImagesDir, references, k, distanceMetric, index, threads,
+                    output != null ? new FileOutputStream(output) : stdout);
+        } catch (Exception e) {
+            System.err.println("Error: " + e);
+            exitCode = 1;
+        } finally {
+            if (metricsFile != null) {
+                PipelineMetrics.get().stopReporting();
+                PipelineMetrics.get().report(true, metricsFile);
+            }
+        }
+        if (exitCode != 0) {
+            System.exit(exitCode);
+        }
+    }
+
+    private static void run(String searchImagesDir, List<String> references, int k, String distanceMetric,
+            String index, int threads, OutputStream out) throws IOException, InterruptedException, ExecutionException {
+        if (!searchImagesDir.endsWith("/") && !searchImagesDir.endsWith(File.separator)) {
+            searchImagesDir += File.separator;
+        }
+
+        long start = System.nanoTime();
+        FeatureMatrix featureVectors = new FeatureMatrix(ImageDescriptorExtractor.DESCRIPTOR_COUNT);
+        CorpusExtractor.extract(searchImagesDir, featureVectors, threads);
+        IJ.log("Indexed " + featureVectors.size() + " images in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+        // Extrai as referências em paralelo; a ordem dos resultados segue a ordem dos argumentos. A busca roda no
+        // mesmo pool: as streams paralelas do KNNFinder e dos índices usam o pool da tarefa que as inicia, então
+        // --threads também limita as consultas
+        double[][] refDescriptors = new double[references.size()][];
+        String[] errors = new String[references.size()];
+        FeatureMatrix queries = new FeatureMatrix(ImageDescriptorExtractor.DESCRIPTOR_COUNT);
+        int[] queryRows = new int[references.size()];
+        KNNFinder.Neighbor[][] neighbors;
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            pool.submit(() -> IntStream.range(0, references.size()).parallel().forEach(i -> {
+                try {
+                    ImagePlus image = IJ.openImage(references.get(i));
+                    if (image == null) {
+                        errors[i] = "Could not open image";
+                    } else {
+                        refDescriptors[i] = ImageDescriptorExtractor.extractDescriptors(image);
+                    }
+                } catch (RuntimeException e) {
+                    errors[i] = e.toString();
+                }
+            })).get();
+
+            for (int i = 0; i < references.size(); i++) {
+                queryRows[i] = refDescriptors[i] != null ? queries.add(references.get(i), refDescriptors[i]) : -1;
+            }
+            neighbors = pool.submit(() -> search(queries, featureVectors, k, distanceMetric, index)).get();
+        } finally {
+            pool.shutdown();
+        }
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            for (int i = 0; i < references.size(); i++) {
+                StringBuilder line = new StringBuilder("{\"reference\":");
+                appendString(line, references.get(i));
+                if (queryRows[i] < 0) {
+                    line.append(",\"error\":");
+                    appendString(line, errors[i]);
+                } else {
+                    line.append(",\"descriptors\":[");
+                    for (int d = 0; d < refDescriptors[i].length; d++) {
+                        line.append(d > 0 ? "," : "").append(number(refDescriptors[i][d]));
+                    }
+                    line.append("],\"neighbors\":[");
+                    KNNFinder.Neighbor[] result = neighbors[queryRows[i]];
+                    for (int j = 0; j < result.length; j++) {
+                        line.append(j > 0 ? "," : "").append("{\"image\":");
+                        appendString(line, result[j].imageName);
+                        line.append(",\"distance\":").append(number(result[j].distance)).append('}');
+                    }
+                    line.append(']');
+                }
+                writer.write(line.append("}\n").toString());
+            }
+        }
+    }
+
+    private static KNNFinder.Neighbor[][] search(FeatureMatrix queries, FeatureMatrix featureVectors, int k,
+            String distanceMetric, String index) {
+        if (index.equals("linear")) {
+            return KNNFinder.findKNearestNeighbors(queries, featureVectors, k, distanceMetric);
+        }
+        long start = System.nanoTime();
+        Function<double[], KNNFinder.Neighbor[]> searcher;
+        if (index.equals("kdtree")) {
+            KDTreeIndex kdTree = new KDTreeIndex(featureVectors);
+            searcher = refVector -> kdTree.findKNearestNeighbors(refVector, k, distanceMetric);
+        } else if (index.equals("vptree")) {
+            VPTreeIndex vpTree = new VPTreeIndex(featureVectors, distanceMetric);
+            searcher = refVector -> vpTree.findKNearestNeighbors(refVector, k);
+        } else {
+            boolean int8 = index.equals("int8");
+            QuantizedIndex quantized = new QuantizedIndex(featureVectors,
+                    int8 ? QuantizedIndex.Bits.INT8 : QuantizedIndex.Bits.INT16);
+            int rerank = (int8 ? INT8_RERANK : INT16_RERANK) * k;
+            searcher = refVector -> quantized.findKNearestNeighbors(refVector, k, distanceMetric, rerank);
+        }
+        IJ.log("Built " + index + " index in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+        // Os índices só são lidos durante a busca, então as consultas podem rodar em paralelo
+        KNNFinder.Neighbor[][] results = new KNNFinder.Neighbor[queries.size()][];
+        IntStream.range(0, queries.size()).parallel().forEach(q -> results[q] = searcher.apply(queries.getRow(q)));
+        return results;
+    }
+
+    // JSON não aceita NaN/Infinity, que aparecem para contornos degenerados
+    private static String number(double value) {
+        return Double.isFinite(value) ? Double.toString(value) : "null";
+    }
+
+    private static void appendString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        builder.append('"');
+    }
+}
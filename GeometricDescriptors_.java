@@ -1,23 +1,32 @@
 import ij.IJ;
 import ij.ImagePlus;
+import ij.Prefs;
 import ij.WindowManager;
 import ij.io.DirectoryChooser;
 import ij.plugin.PlugIn;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
 
 public class GeometricDescriptors_ implements PlugIn {
 
+    // Argumento do plugin que mantém o acervo do diretório monitorado entre execuções
+    private static final String LIVE_MODE = "live";
+    // Argumento do plugin que liga o PipelineMetrics, com resumo periódico no log (pode ser combinado: "live metrics")
+    private static final String METRICS_MODE = "metrics";
+    private static final long METRICS_PERIOD_SECONDS = 30;
+
     private ImagePlus referenceImage;
 
     @Override
     public void run(String arg) {
+        List<String> options = arg != null ? Arrays.asList(arg.trim().split("\\s+")) : Collections.emptyList();
+        boolean metrics = options.contains(METRICS_MODE);
+        if (metrics) {
+            PipelineMetrics.get().startReporting(METRICS_PERIOD_SECONDS, true, null);
+        }
         try {
             // Abrir imagem de referência
             openReferenceImage();
@@ -36,26 +45,36 @@ public class GeometricDescriptors_ implements PlugIn {
             // Extrair descritores da imagem de referência
             double[] refDescriptors = extractReferenceDescriptors();
 
-            // Extrair descritores e caminhos das imagens de busca do diretório selecionado
-            List<double[]> featureVectors = new ArrayList<>();
-            List<String> imagePaths = new ArrayList<>();
-            extractSearchImageDescriptors(searchImagesDir, featureVectors, imagePaths);
-
-            // Salvar descritores em um arquivo
-            saveDescriptorsToFile(refDescriptors, featureVectors, imagePaths);
+            // No modo "live" o acervo é monitorado e atualizado em segundo plano; a busca usa um snapshot consistente
+            LiveCorpusIndex.Snapshot liveCorpus = null;
+            FeatureMatrix featureVectors = null;
+            if (options.contains(LIVE_MODE)) {
+                liveCorpus = LiveCorpusIndex.open(searchImagesDir, Prefs.getThreads()).snapshot();
+            } else {
+                // Extrair descritores e caminhos das imagens de busca do diretório selecionado
+                // (imagens inalteradas são lidas do índice binário salvo no próprio diretório)
+                featureVectors = new FeatureMatrix(ImageDescriptorExtractor.DESCRIPTOR_COUNT);
+                extractSearchImageDescriptors(searchImagesDir, featureVectors);
+            }
 
             // Obter valor de k vizinhos e métrica de distância do usuário
             int k = Integer.parseInt(IJ.getString("Enter value of k", "3"));
             String distanceMetric = IJ.getString("Enter distance metric (euclidean/manhattan)", "euclidean");
 
             // Executar busca pelos k-vizinhos mais próximos
-            KNNFinder.Neighbor[] neighbors = KNNFinder.findKNearestNeighbors(refDescriptors, featureVectors, k,
-                    distanceMetric);
+            KNNFinder.Neighbor[] neighbors = liveCorpus != null
+                    ? liveCorpus.findKNearestNeighbors(refDescriptors, k, distanceMetric)
+                    : KNNFinder.findKNearestNeighbors(refDescriptors, featureVectors, k, distanceMetric);
 
-            displayResults(refDescriptors, neighbors, imagePaths);
+            displayResults(refDescriptors, neighbors);
 
         } catch (Exception e) {
             IJ.error("Error", "An error occurred: " + e.getMessage());
+        } finally {
+            // O resumo periódico continua ativo para acompanhar as atualizações do modo "live"
+            if (metrics) {
+                PipelineMetrics.get().report(true, null);
+            }
         }
     }
 
@@ -72,39 +91,17 @@ public class GeometricDescriptors_ implements PlugIn {
         return ImageDescriptorExtractor.extractDescriptors(referenceImage);
     }
 
-    private void extractSearchImageDescriptors(String searchImagesDir, List<double[]> featureVectors, List<String> imagePaths) {
-        for (String path : Objects.requireNonNull(new java.io.File(searchImagesDir).list())) {
-            ImagePlus image = IJ.openImage(searchImagesDir + path);
-            if (image != null) {
-                try {
-                    double[] descriptors = ImageDescriptorExtractor.extractDescriptors(image);
-                    featureVectors.add(descriptors);
-                    imagePaths.add(path); // Armazenar o caminho da imagem
-                } catch (IllegalArgumentException e) {
-                    IJ.log("Skipped image " + path + " due to: " + e.getMessage());
-                }
-            }
-        }
-    }
-
-    private void saveDescriptorsToFile(double[] refDescriptors, List<double[]> featureVectors, List<String> imagePaths) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter("descriptors.txt"))) {
-            writer.write("Reference Image:\n");
-            writer.write(Arrays.toString(refDescriptors) + "\n");
-
-            writer.write("Search Images:\n");
-            for (int i = 0; i < featureVectors.size(); i++) {
-                writer.write(imagePaths.get(i) + ": " + Arrays.toString(featureVectors.get(i)) + "\n");
-            }
-        }
+    private void extractSearchImageDescriptors(String searchImagesDir, FeatureMatrix featureVectors)
+            throws InterruptedException, IOException {
+        // Usa o número de threads configurado no ImageJ (Edit > Options > Memory & Threads)
+        CorpusExtractor.extract(searchImagesDir, featureVectors, Prefs.getThreads());
     }
 
-    private void displayResults(double[] refDescriptors, KNNFinder.Neighbor[] neighbors, List<String> imagePaths) {
+    private void displayResults(double[] refDescriptors, KNNFinder.Neighbor[] neighbors) {
         StringBuilder result = new StringBuilder("Reference Vector: " + Arrays.toString(refDescriptors) + "\n");
         result.append("K Nearest Neighbors:\n");
         for (KNNFinder.Neighbor neighbor : neighbors) {
-            int index = neighbor.getIndex();
-            String imageName = imagePaths.get(index); // Obter nome real da imagem correspondente ao vizinho
+            String imageName = neighbor.imageName; // Nome real da imagem correspondente ao vizinho
             double distance = neighbor.getDistance(); // Obter distância do vizinho
             result.append("Image: ").append(imageName).append(", Distance: ").append(distance).append("\n");
         }
@@ -0,0 +1,113 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Modo de verificação: compara os vizinhos de cada índice com a varredura linear do KNNFinder (força bruta),
+// sobre os descritores de um diretório e sobre um acervo sintético com duplicatas.
+//
+// Uso: java -cp ij.jar:. IndexVerifier ["imgs forma"] [tamanho sintético]
+public class IndexVerifier {
+
+    private static final int QUERIES = 500;
+    private static final int[] K_VALUES = { 1, 3, 10 };
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        String dir = args.length > 0 ? args[0] : "imgs forma";
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+        FeatureMatrix extracted = new FeatureMatrix(ImageDescriptorExtractor.DESCRIPTOR_COUNT);
+        CorpusExtractor.extract(dir.endsWith("/") ? dir : dir + "/", extracted,
+                Runtime.getRuntime().availableProcessors());
+
+        // Sintético: valores na faixa dos descritores, com 10% de linhas repetidas para exercitar os empates e 1% de
+        // linhas degeneradas (um descritor NaN ou infinito, como nos contornos sem perímetro)
+        Random random = new Random(42);
+        FeatureMatrix synthetic = new FeatureMatrix(ImageDescriptorExtractor.DESCRIPTOR_COUNT);
+        List<double[]> rows = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            double[] vector = i > 0 && random.nextInt(10) == 0 ? rows.get(random.nextInt(rows.size()))
+                    : new double[] { 20 + 200 * random.nextDouble(), random.nextDouble(), random.nextDouble(),
+                            1 + 100 * random.nextDouble() };
+            if (random.nextInt(100) == 0) {
+                vector = vector.clone();
+                vector[random.nextInt(vector.length)] = random.nextBoolean() ? Double.NaN
+                        : Double.POSITIVE_INFINITY;
+            }
+            rows.add(vector);
+            synthetic.add("v" + i, vector);
+        }
+
+        int mismatches = check(dir, extracted, random) + check("synthetic", synthetic, random);
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int check(String name, FeatureMatrix corpus, Random random) {
+        if (corpus.size() == 0) {
+            System.out.println(name + ": no descriptors");
+            return 0;
+        }
+        KDTreeIndex kdTree = new KDTreeIndex(corpus);
+        int checked = 0;
+        int mismatches = 0;
+        for (KNNFinder.Metric metric : KNNFinder.Metric.values()) {
+            VPTreeIndex vpTree = new VPTreeIndex(corpus, metric.getName());
+            for (int q = 0; q < QUERIES; q++) {
+                // Metade das consultas são linhas do próprio acervo (distância zero), metade são perturbadas
+                double[] query = corpus.getRow(random.nextInt(corpus.size()));
+                if (q % 2 == 1) {
+                    for (int d = 0; d < query.length; d++) {
+                        query[d] *= 1 + 0.1 * random.nextGaussian();
+                    }
+                }
+                for (int k : K_VALUES) {
+                    KNNFinder.Neighbor[] expected = KNNFinder.findKNearestNeighbors(query, corpus, k,
+                            metric.getName());
+                    checked++;
+                    if (!same(expected, kdTree.findKNearestNeighbors(query, k, metric.getName()))) {
+                        mismatches++;
+                        System.out.println("MISMATCH " + name + " kd-tree " + metric.getName() + " k=" + k);
+                    }
+                    if (!same(expected, vpTree.findKNearestNeighbors(query, k))) {
+                        mismatches++;
+                        System.out.println("MISMATCH " + name + " vp-tree " + metric.getName() + " k=" + k);
+                    }
+                }
+
+                // Busca por raio da VP-tree: o raio do 10º vizinho, comparado com a contagem por força bruta. Uma
+                // consulta com NaN não tem vizinhos (as distâncias NaN nunca entram) e fica com raio 0.
+                KNNFinder.Neighbor[] nearest = KNNFinder.findKNearestNeighbors(query, corpus, 10, metric.getName());
+                double radius = nearest.length > 0 ? nearest[nearest.length - 1].distance : 0.0;
+                int expectedCount = 0;
+                for (int i = 0; i < corpus.size(); i++) {
+                    if (metric.distance(query, corpus.getRow(i)) <= radius) {
+                        expectedCount++;
+                    }
+                }
+                if (vpTree.findNeighborsWithinRadius(query, radius).length != expectedCount) {
+                    mismatches++;
+                    System.out.println("MISMATCH " + name + " vp-tree radius " + metric.getName());
+                }
+            }
+        }
+        System.out.println(name + ": " + corpus.size() + " vectors, " + checked + " queries per index, "
+                + mismatches + " mismatches");
+        return mismatches;
+    }
+
+    // Mesmos índices na mesma ordem e mesmas distâncias: o TopK desempata pelo índice, então o resultado é único
+    private static boolean same(KNNFinder.Neighbor[] expected, KNNFinder.Neighbor[] actual) {
+        if (expected.length != actual.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i].index != actual[i].index
+                    || Double.compare(expected[i].distance, actual[i].distance) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,212 @@
+public class KDTreeIndex {
+
+    private static final int LEAF_SIZE = 8;
+
+    private final FeatureMatrix featureVectors;
+    private final int dimensions;
+
+    // Pontos copiados em ordem da árvore (row-major) e o índice original de cada um na FeatureMatrix
+    private final double[] points;
+    private final int[] rows;
+    // Só as primeiras treeSize posições estão na árvore; o resto são linhas degeneradas, varridas linearmente
+    private final int treeSize;
+
+    // Nós em arrays paralelos; filhos < 0 indicam folha cobrindo [start, end)
+    private int[] splitDimension;
+    private double[] splitValue;
+    private int[] leftChild;
+    private int[] rightChild;
+    private int[] start;
+    private int[] end;
+    private int nodeCount;
+
+    public KDTreeIndex(FeatureMatrix featureVectors) {
+        this.featureVectors = featureVectors;
+        this.dimensions = featureVectors.getDimensions();
+        int n = featureVectors.size();
+        double[] data = new double[n * dimensions];
+        for (int i = 0; i < n; i++) {
+            for (int d = 0; d < dimensions; d++) {
+                data[i * dimensions + d] = featureVectors.get(i, d);
+            }
+        }
+
+        // Um descritor NaN ou infinito (contorno sem perímetro) não tem lado definido no plano de corte: essas
+        // linhas ficam fora da árvore, no fim de rows
+        this.rows = new int[n];
+        int finite = 0;
+        for (int i = 0; i < n; i++) {
+            if (isFinite(data, i * dimensions, dimensions)) {
+                rows[finite++] = i;
+            }
+        }
+        this.treeSize = finite;
+        for (int i = 0; i < n; i++) {
+            if (!isFinite(data, i * dimensions, dimensions)) {
+                rows[finite++] = i;
+            }
+        }
+
+        // Folhas têm ao menos LEAF_SIZE / 2 pontos, o que limita o número de nós
+        int maxNodes = 2 * (treeSize / (LEAF_SIZE / 2) + 1);
+        splitDimension = new int[maxNodes];
+        splitValue = new double[maxNodes];
+        leftChild = new int[maxNodes];
+        rightChild = new int[maxNodes];
+        start = new int[maxNodes];
+        end = new int[maxNodes];
+        build(data, 0, treeSize);
+
+        // Reordena os pontos conforme a permutação final para que cada folha fique contígua na memória
+        this.points = new double[n * dimensions];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(data, rows[i] * dimensions, points, i * dimensions, dimensions);
+        }
+    }
+
+    public int size() {
+        return rows.length;
+    }
+
+    public KNNFinder.Neighbor[] findKNearestNeighbors(double[] refVector, int k, String distanceMetric) {
+        KNNFinder.Metric metric = KNNFinder.Metric.fromName(distanceMetric);
+        long start = PipelineMetrics.start();
+        TopK topK = new TopK(k);
+        long evaluations = search(refVector, metric, topK);
+        KNNFinder.Neighbor[] neighbors = topK.toNeighbors(featureVectors, metric);
+        PipelineMetrics.stop(PipelineMetrics.Stage.KNN_QUERY, start);
+        PipelineMetrics.knnQueries(1, evaluations);
+        return neighbors;
+    }
+
+    // Preenche topK com distâncias brutas e índices da FeatureMatrix original; devolve os pontos avaliados
+    long search(double[] refVector, KNNFinder.Metric metric, TopK topK) {
+        boolean euclidean = metric == KNNFinder.Metric.EUCLIDEAN;
+        // Uma consulta degenerada não tem lado definido em nenhum corte: varre tudo, como o KNNFinder
+        if (!isFinite(refVector, 0, dimensions)) {
+            return scan(0, rows.length, refVector, euclidean, topK);
+        }
+        long evaluations = treeSize == 0 ? 0 : search(0, refVector, euclidean, topK, new double[dimensions], 0.0);
+        return evaluations + scan(treeSize, rows.length, refVector, euclidean, topK);
+    }
+
+    private int build(double[] data, int from, int to) {
+        int node = nodeCount++;
+        start[node] = from;
+        end[node] = to;
+        if (to - from <= LEAF_SIZE) {
+            leftChild[node] = -1;
+            rightChild[node] = -1;
+            return node;
+        }
+
+        // Divide pela dimensão de maior amplitude, na mediana
+        int dimension = 0;
+        double widest = -1;
+        for (int d = 0; d < dimensions; d++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < to; i++) {
+                double value = data[rows[i] * dimensions + d];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (max - min > widest) {
+                widest = max - min;
+                dimension = d;
+            }
+        }
+        int median = (from + to) >>> 1;
+        select(data, from, to - 1, median, dimension);
+
+        splitDimension[node] = dimension;
+        splitValue[node] = data[rows[median] * dimensions + dimension];
+        leftChild[node] = build(data, from, median);
+        rightChild[node] = build(data, median, to);
+        return node;
+    }
+
+    // Quickselect sobre a permutação: após a chamada, rows[k] tem o k-ésimo menor valor em "dimension"
+    private void select(double[] data, int left, int right, int k, int dimension) {
+        while (right > left) {
+            double pivot = data[rows[(left + right) >>> 1] * dimensions + dimension];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (data[rows[i] * dimensions + dimension] < pivot) {
+                    i++;
+                }
+                while (data[rows[j] * dimensions + dimension] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = rows[i];
+                    rows[i] = rows[j];
+                    rows[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    // "offsets" guarda, por dimensão, a distância do ponto de consulta à região do nó; "bound" é a soma dos termos
+    private long search(int node, double[] refVector, boolean euclidean, TopK topK, double[] offsets, double bound) {
+        if (leftChild[node] < 0) {
+            return scan(start[node], end[node], refVector, euclidean, topK);
+        }
+
+        int dimension = splitDimension[node];
+        double diff = refVector[dimension] - splitValue[node];
+        int near = diff < 0 ? leftChild[node] : rightChild[node];
+        int far = diff < 0 ? rightChild[node] : leftChild[node];
+
+        long evaluations = search(near, refVector, euclidean, topK, offsets, bound);
+
+        double oldOffset = offsets[dimension];
+        double farBound = bound - term(oldOffset, euclidean) + term(diff, euclidean);
+        if (farBound <= topK.threshold()) {
+            offsets[dimension] = diff;
+            evaluations += search(far, refVector, euclidean, topK, offsets, farBound);
+            offsets[dimension] = oldOffset;
+        }
+        return evaluations;
+    }
+
+    // Mesma varredura do KNNFinder sobre as posições [from, to)
+    private long scan(int from, int to, double[] refVector, boolean euclidean, TopK topK) {
+        double threshold = topK.threshold();
+        for (int i = from; i < to; i++) {
+            int offset = i * dimensions;
+            double sum = 0.0;
+            for (int d = 0; d < dimensions && sum <= threshold; d++) {
+                double diff = refVector[d] - points[offset + d];
+                sum += euclidean ? diff * diff : Math.abs(diff);
+            }
+            if (sum <= threshold && topK.offer(rows[i], sum)) {
+                threshold = topK.threshold();
+            }
+        }
+        return to - from;
+    }
+
+    static boolean isFinite(double[] values, int offset, int length) {
+        for (int d = offset; d < offset + length; d++) {
+            if (!Double.isFinite(values[d])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double term(double diff, boolean euclidean) {
+        return euclidean ? diff * diff : Math.abs(diff);
+    }
+}
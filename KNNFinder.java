@@ -1,9 +1,17 @@
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.stream.IntStream;
 
 public class KNNFinder {
 
+    // Tamanho do bloco de linhas acumulado de uma vez no layout column-major
+    private static final int COLUMN_BLOCK = 256;
+
+    // Blocos da busca em lote: cada bloco de consultas percorre o acervo em blocos que cabem na cache
+    private static final int QUERY_BLOCK = 64;
+    private static final int CORPUS_BLOCK = 4096;
+
     public static class Neighbor {
         public final double distance;
         public final String imageName;
@@ -23,46 +31,221 @@ public class KNNFinder {
         }
     }
 
-    public static Neighbor[] findKNearestNeighbors(double[] refVector, List<double[]> featureVectors, int k, String distanceMetric) {
-        PriorityQueue<Neighbor> queue = new PriorityQueue<>(Comparator.comparingDouble(n -> n.distance));
+    // As buscas comparam distâncias "brutas" (quadrado da euclidiana) e só convertem os k resultados finais
+    public enum Metric {
+        EUCLIDEAN("euclidean") {
+            @Override
+            double term(double diff) {
+                return diff * diff;
+            }
+
+            @Override
+            public double fromRawDistance(double raw) {
+                return Math.sqrt(raw);
+            }
+
+            @Override
+            public double toRawDistance(double distance) {
+                return distance * distance;
+            }
+        },
+        MANHATTAN("manhattan") {
+            @Override
+            double term(double diff) {
+                return Math.abs(diff);
+            }
+
+            @Override
+            public double fromRawDistance(double raw) {
+                return raw;
+            }
+
+            @Override
+            public double toRawDistance(double distance) {
+                return distance;
+            }
+        };
+
+        private final String name;
+
+        Metric(String name) {
+            this.name = name;
+        }
 
-        for (int i = 0; i < featureVectors.size(); i++) {
-            double[] featureVector = featureVectors.get(i);
-            double distance = calculateDistance(refVector, featureVector, distanceMetric);
-            queue.add(new Neighbor(distance, "Image " + (i + 1), i));
+        public String getName() {
+            return name;
         }
 
-        Neighbor[] neighbors = new Neighbor[k];
-        for (int i = 0; i < k; i++) {
-            neighbors[i] = queue.poll();
+        abstract double term(double diff);
+
+        public abstract double fromRawDistance(double raw);
+
+        public abstract double toRawDistance(double distance);
+
+        public double rawDistance(double[] v1, double[] v2) {
+            double sum = 0.0;
+            for (int i = 0; i < v1.length; i++) {
+                sum += term(v1[i] - v2[i]);
+            }
+            return sum;
         }
 
+        public double distance(double[] v1, double[] v2) {
+            return fromRawDistance(rawDistance(v1, v2));
+        }
+
+        // Variante sobre uma linha de um array row-major, para índices que guardam os pontos contíguos
+        double distance(double[] v1, double[] data, int offset) {
+            double sum = 0.0;
+            for (int i = 0; i < v1.length; i++) {
+                sum += term(v1[i] - data[offset + i]);
+            }
+            return fromRawDistance(sum);
+        }
+
+        public static Metric fromName(String distanceMetric) {
+            for (Metric metric : values()) {
+                if (metric.name.equals(distanceMetric)) {
+                    return metric;
+                }
+            }
+            throw new IllegalArgumentException("Unknown distance metric: " + distanceMetric);
+        }
+    }
+
+    public static Neighbor[] findKNearestNeighbors(double[] refVector, List<double[]> featureVectors, int k, String distanceMetric) {
+        return findKNearestNeighbors(refVector, FeatureMatrix.of(featureVectors), k, distanceMetric);
+    }
+
+    public static Neighbor[] findKNearestNeighbors(double[] refVector, FeatureMatrix featureVectors, int k, String distanceMetric) {
+        Metric metric = Metric.fromName(distanceMetric);
+        long start = PipelineMetrics.start();
+        TopK topK = new TopK(k);
+        scan(refVector, featureVectors, 0, featureVectors.size(), metric, topK, null);
+        Neighbor[] neighbors = topK.toNeighbors(featureVectors, metric);
+        PipelineMetrics.stop(PipelineMetrics.Stage.KNN_QUERY, start);
+        PipelineMetrics.knnQueries(1, featureVectors.size());
         return neighbors;
     }
 
-    private static double calculateDistance(double[] v1, double[] v2, String distanceMetric) {
-        if ("euclidean".equals(distanceMetric)) {
-            return euclideanDistance(v1, v2);
-        } else if ("manhattan".equals(distanceMetric)) {
-            return manhattanDistance(v1, v2);
+    // Busca em lote: uma linha de "queries" por consulta, resultado na mesma ordem das consultas
+    public static Neighbor[][] findKNearestNeighbors(FeatureMatrix queries, FeatureMatrix featureVectors, int k,
+            String distanceMetric) {
+        Metric metric = Metric.fromName(distanceMetric);
+        if (queries.getDimensions() != featureVectors.getDimensions()) {
+            throw new IllegalArgumentException("Queries have " + queries.getDimensions()
+                    + " dimensions, expected " + featureVectors.getDimensions());
+        }
+        long batchStart = PipelineMetrics.start();
+        int queryCount = queries.size();
+        Neighbor[][] results = new Neighbor[queryCount][];
+
+        // Reduz o bloco de consultas quando há poucas consultas, para ainda ocupar todos os núcleos
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int queryBlock = Math.max(1, Math.min(QUERY_BLOCK, (queryCount + parallelism - 1) / parallelism));
+        int blockCount = (queryCount + queryBlock - 1) / queryBlock;
+
+        IntStream.range(0, blockCount).parallel().forEach(b -> {
+            int first = b * queryBlock;
+            int last = Math.min(queryCount, first + queryBlock);
+            int dimensions = queries.getDimensions();
+            double[][] refVectors = new double[last - first][];
+            TopK[] topKs = new TopK[last - first];
+            for (int q = first; q < last; q++) {
+                refVectors[q - first] = queries.getRow(q, new double[dimensions]);
+                topKs[q - first] = new TopK(k);
+            }
+            double[] block = new double[COLUMN_BLOCK];
+
+            // O bloco do acervo é reutilizado por todas as consultas do bloco enquanto ainda está na cache
+            for (int start = 0; start < featureVectors.size(); start += CORPUS_BLOCK) {
+                int end = Math.min(featureVectors.size(), start + CORPUS_BLOCK);
+                for (int q = 0; q < refVectors.length; q++) {
+                    scan(refVectors[q], featureVectors, start, end, metric, topKs[q], block);
+                }
+            }
+            for (int q = first; q < last; q++) {
+                results[q] = topKs[q - first].toNeighbors(featureVectors, metric);
+            }
+        });
+        // O lote inteiro conta como uma amostra de KNN_QUERY; a varredura linear avalia todas as linhas por consulta
+        PipelineMetrics.stop(PipelineMetrics.Stage.KNN_QUERY, batchStart);
+        PipelineMetrics.knnQueries(queryCount, (long) queryCount * featureVectors.size());
+        return results;
+    }
+
+    // Varre as linhas [from, to) alimentando topK com distâncias brutas; "block" é um buffer opcional de COLUMN_BLOCK posições
+    static void scan(double[] refVector, FeatureMatrix featureVectors, int from, int to, Metric metric, TopK topK,
+            double[] block) {
+        scan(refVector, featureVectors, from, to, metric, topK, block, null, 0);
+    }
+
+    // Variante para índices segmentados: ignora as linhas marcadas em "deleted" e soma "indexBase" aos índices
+    static void scan(double[] refVector, FeatureMatrix featureVectors, int from, int to, Metric metric, TopK topK,
+            double[] block, BitSet deleted, int indexBase) {
+        if (featureVectors.getLayout() == FeatureMatrix.Layout.ROW_MAJOR) {
+            scanRowMajor(refVector, featureVectors, from, to, metric == Metric.EUCLIDEAN, topK, deleted, indexBase);
         } else {
-            throw new IllegalArgumentException("Unknown distance metric: " + distanceMetric);
+            scanColumnMajor(refVector, featureVectors, from, to, metric == Metric.EUCLIDEAN, topK,
+                    block != null ? block : new double[COLUMN_BLOCK], deleted, indexBase);
         }
     }
 
-    private static double euclideanDistance(double[] v1, double[] v2) {
-        double sum = 0.0;
-        for (int i = 0; i < v1.length; i++) {
-            sum += Math.pow(v1[i] - v2[i], 2);
+    private static void scanRowMajor(double[] refVector, FeatureMatrix featureVectors, int from, int to,
+            boolean euclidean, TopK topK, BitSet deleted, int indexBase) {
+        int dimensions = featureVectors.getDimensions();
+        double[] doubleData = featureVectors.doubleData();
+        float[] floatData = featureVectors.floatData();
+        double threshold = topK.threshold();
+
+        for (int i = from; i < to; i++) {
+            int offset = i * dimensions;
+            double sum = 0.0;
+            // Interrompe a soma assim que a distância parcial ultrapassa o k-ésimo melhor atual
+            for (int d = 0; d < dimensions && sum <= threshold; d++) {
+                double value = doubleData != null ? doubleData[offset + d] : floatData[offset + d];
+                double diff = refVector[d] - value;
+                sum += euclidean ? diff * diff : Math.abs(diff);
+            }
+            if (sum <= threshold && (deleted == null || !deleted.get(i)) && topK.offer(indexBase + i, sum)) {
+                threshold = topK.threshold();
+            }
         }
-        return Math.sqrt(sum);
     }
 
-    private static double manhattanDistance(double[] v1, double[] v2) {
-        double sum = 0.0;
-        for (int i = 0; i < v1.length; i++) {
-            sum += Math.abs(v1[i] - v2[i]);
+    private static void scanColumnMajor(double[] refVector, FeatureMatrix featureVectors, int from, int to,
+            boolean euclidean, TopK topK, double[] block, BitSet deleted, int indexBase) {
+        int dimensions = featureVectors.getDimensions();
+        int dimensionStride = featureVectors.dimensionStride();
+        double[] doubleData = featureVectors.doubleData();
+        float[] floatData = featureVectors.floatData();
+
+        // Acumula um bloco de linhas dimensão por dimensão (acesso contíguo) e só então atualiza o heap
+        for (int start = from; start < to; start += COLUMN_BLOCK) {
+            int length = Math.min(COLUMN_BLOCK, to - start);
+            Arrays.fill(block, 0, length, 0.0);
+            for (int d = 0; d < dimensions; d++) {
+                int offset = d * dimensionStride + start;
+                double ref = refVector[d];
+                if (doubleData != null) {
+                    for (int i = 0; i < length; i++) {
+                        double diff = ref - doubleData[offset + i];
+                        block[i] += euclidean ? diff * diff : Math.abs(diff);
+                    }
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        double diff = ref - floatData[offset + i];
+                        block[i] += euclidean ? diff * diff : Math.abs(diff);
+                    }
+                }
+            }
+            double threshold = topK.threshold();
+            for (int i = 0; i < length; i++) {
+                if (block[i] <= threshold && (deleted == null || !deleted.get(start + i))
+                        && topK.offer(indexBase + start + i, block[i])) {
+                    threshold = topK.threshold();
+                }
+            }
         }
-        return sum;
     }
 }
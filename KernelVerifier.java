@@ -0,0 +1,122 @@
+import lib.ImageAccess;
+import lib.PixelKernels;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Modo de verificação: compara os kernels aritméticos selecionados para a JVM (SIMD com
+// --add-modules jdk.incubator.vector) com os laços escalares de referência, inclusive valores especiais.
+//
+// O VectorPixelKernels fica em vector/ e é compilado à parte, só ele com o módulo da incubadora:
+//   javac --add-modules jdk.incubator.vector -cp ij.jar:. -d . vector/lib/*.java
+//
+// Uso: java --add-modules jdk.incubator.vector -cp ij.jar:. KernelVerifier [tamanho]
+public class KernelVerifier {
+
+    private static final double[] SPECIAL = { 0.0, -0.0, 1.0, -1.0, Double.NaN, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE };
+    private static final double[] EXPONENTS = { 2.0, 0.5, 3.0, -1.0 };
+
+    private static int mismatches;
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+        PixelKernels vector = PixelKernels.get();
+        PixelKernels scalar = PixelKernels.scalar();
+        System.out.println("Kernels: " + vector.getName());
+
+        Random random = new Random(42);
+        // Tamanhos pequenos exercitam o laço final que não completa um vetor
+        for (int n : new int[] { 0, 1, 3, 7, 17, 63, size }) {
+            double[] a = randomPixels(random, n);
+            double[] b = randomPixels(random, n);
+
+            check("abs", n, a, (k, p) -> k.abs(p, n));
+            check("sqrt", n, a, (k, p) -> k.sqrt(p, n));
+            for (double exponent : EXPONENTS) {
+                check("pow " + exponent, n, a, (k, p) -> k.pow(p, n, exponent));
+            }
+            check("add constant", n, a, (k, p) -> k.add(p, n, 3.5));
+            check("multiply constant", n, a, (k, p) -> k.multiply(p, n, -0.25));
+            check("subtract constant", n, a, (k, p) -> k.subtract(p, n, 1e-3));
+            check("divide constant", n, a, (k, p) -> k.divide(p, n, 7.0));
+            check("add", n, a, (k, p) -> k.add(p, p, b, n));
+            check("multiply", n, a, (k, p) -> k.multiply(p, p, b, n));
+            check("subtract", n, a, (k, p) -> k.subtract(p, p, b, n));
+            check("divide", n, a, (k, p) -> k.divide(p, p, b, n));
+        }
+
+        // ImageAccess delega para os kernels selecionados
+        ImageAccess image = new ImageAccess(1024, size / 1024);
+        double[] reference = randomPixels(random, image.getPixels().length);
+        System.arraycopy(reference, 0, image.getPixels(), 0, reference.length);
+        ImageAccess other = image.duplicate();
+        image.abs();
+        image.sqrt();
+        image.add(image, other);
+        scalar.abs(reference, reference.length);
+        scalar.sqrt(reference, reference.length);
+        scalar.add(reference, reference, other.getPixels(), reference.length);
+        compare("ImageAccess", reference, image.getPixels());
+
+        long scalarTime = time(scalar, size);
+        long vectorTime = time(vector, size);
+        System.out.println("Scalar: " + scalarTime / 1000000 + " ms, " + vector.getName() + ": "
+                + vectorTime / 1000000 + " ms");
+        System.out.println(mismatches + " mismatches");
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    private interface Operation {
+        void apply(PixelKernels kernels, double[] pixels);
+    }
+
+    private static void check(String name, int n, double[] input, Operation operation) {
+        double[] expected = Arrays.copyOf(input, n);
+        double[] actual = Arrays.copyOf(input, n);
+        operation.apply(PixelKernels.scalar(), expected);
+        operation.apply(PixelKernels.get(), actual);
+        compare(name + " (n=" + n + ")", expected, actual);
+    }
+
+    private static void compare(String name, double[] expected, double[] actual) {
+        for (int k = 0; k < expected.length; k++) {
+            if (Double.doubleToLongBits(expected[k]) != Double.doubleToLongBits(actual[k])) {
+                mismatches++;
+                System.out.println("MISMATCH " + name + " at " + k + ": " + expected[k] + " != " + actual[k]);
+                return;
+            }
+        }
+    }
+
+    private static double[] randomPixels(Random random, int n) {
+        double[] pixels = new double[n];
+        for (int k = 0; k < n; k++) {
+            pixels[k] = k % 37 == 0 ? SPECIAL[(k / 37) % SPECIAL.length] : (random.nextDouble() - 0.25) * 512;
+        }
+        return pixels;
+    }
+
+    // Cadeia típica de filtro (magnitude do gradiente) repetida algumas vezes
+    private static long time(PixelKernels kernels, int size) {
+        double[] gx = new double[size];
+        double[] gy = new double[size];
+        Arrays.fill(gx, 3.0);
+        Arrays.fill(gy, 4.0);
+        double[] out = new double[size];
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            kernels.multiply(out, gx, gx, size);
+            kernels.pow(gy, size, 2.0);
+            kernels.add(out, out, gy, size);
+            kernels.sqrt(out, size);
+            kernels.divide(out, size, 5.0);
+            kernels.sqrt(gy, size);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
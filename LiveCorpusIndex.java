@@ -0,0 +1,311 @@
+import ij.IJ;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Mantém o acervo de um diretório atualizado com WatchService. Imagens criadas ou modificadas são extraídas e
+// inseridas em um novo segmento; imagens removidas (ou substituídas) são marcadas como apagadas. As consultas
+// usam sempre um Snapshot imutável, publicado de uma vez ao fim de cada lote de alterações.
+public class LiveCorpusIndex implements Closeable {
+
+    // Espera por novos eventos antes de processar um lote, para não extrair arquivos ainda sendo copiados
+    private static final long QUIET_PERIOD_MS = 250;
+    // Intervalo entre verificações de que o diretório ainda existe quando não há eventos
+    private static final long VALIDITY_CHECK_MS = 1000;
+    // Segmentos e fração de linhas apagadas a partir dos quais o índice é compactado em um único segmento
+    private static final int MAX_SEGMENTS = 8;
+    private static final double MAX_DELETED_FRACTION = 0.25;
+
+    public static final class Snapshot {
+        private final FeatureMatrix[] segments;
+        private final BitSet[] deleted;
+        private final int[] bases;
+        private final int liveCount;
+
+        private Snapshot(FeatureMatrix[] segments, BitSet[] deleted) {
+            this.segments = segments;
+            this.deleted = deleted;
+            this.bases = new int[segments.length];
+            int base = 0;
+            int live = 0;
+            for (int s = 0; s < segments.length; s++) {
+                bases[s] = base;
+                base += segments[s].size();
+                live += segments[s].size() - deleted[s].cardinality();
+            }
+            this.liveCount = live;
+        }
+
+        public int size() {
+            return liveCount;
+        }
+
+        // Índice global: posição da linha somada ao tamanho dos segmentos anteriores
+        public String getId(int index) {
+            int s = segmentOf(index);
+            return segments[s].getId(index - bases[s]);
+        }
+
+        public KNNFinder.Neighbor[] findKNearestNeighbors(double[] refVector, int k, String distanceMetric) {
+            KNNFinder.Metric metric = KNNFinder.Metric.fromName(distanceMetric);
+            long start = PipelineMetrics.start();
+            TopK topK = new TopK(k);
+            double[] block = new double[256];
+            for (int s = 0; s < segments.length; s++) {
+                KNNFinder.scan(refVector, segments[s], 0, segments[s].size(), metric, topK, block, deleted[s],
+                        bases[s]);
+            }
+            KNNFinder.Neighbor[] neighbors = topK.toNeighbors(this::getId, metric);
+            PipelineMetrics.stop(PipelineMetrics.Stage.KNN_QUERY, start);
+            PipelineMetrics.knnQueries(1, liveCount);
+            return neighbors;
+        }
+
+        // Copia as linhas vivas para uma única matriz, na ordem dos segmentos
+        public FeatureMatrix toFeatureMatrix() {
+            int dimensions = segments.length > 0 ? segments[0].getDimensions()
+                    : ImageDescriptorExtractor.DESCRIPTOR_COUNT;
+            FeatureMatrix matrix = new FeatureMatrix(dimensions, FeatureMatrix.Layout.ROW_MAJOR,
+                    FeatureMatrix.Precision.DOUBLE, liveCount);
+            double[] vector = new double[dimensions];
+            for (int s = 0; s < segments.length; s++) {
+                for (int row = 0; row < segments[s].size(); row++) {
+                    if (!deleted[s].get(row)) {
+                        matrix.add(segments[s].getId(row), segments[s].getRow(row, vector));
+                    }
+                }
+            }
+            return matrix;
+        }
+
+        private int segmentOf(int index) {
+            int s = Arrays.binarySearch(bases, index);
+            if (s < 0) {
+                return -s - 2;
+            }
+            // Segmentos vazios compartilham a mesma base; o último deles é o que contém o índice
+            while (s + 1 < bases.length && bases[s + 1] == index) {
+                s++;
+            }
+            return s;
+        }
+    }
+
+    // Índices ativos por diretório, compartilhados entre execuções do plugin
+    private static final Map<String, LiveCorpusIndex> OPEN = new HashMap<>();
+
+    private final String directory;
+    private final int workers;
+    private final WatchService watchService;
+    private final WatchKey watchKey;
+    private final Thread watcher;
+    private volatile Snapshot snapshot;
+
+    // Só acessado pela thread de monitoramento: posição atual (segmento, linha) de cada arquivo
+    private final Map<String, long[]> locations = new HashMap<>();
+
+    public LiveCorpusIndex(String directory, int workers) throws IOException, InterruptedException {
+        this.directory = normalize(directory);
+        this.workers = workers;
+
+        // Registra o monitoramento antes da carga inicial para não perder arquivos criados nesse intervalo
+        Path path = new File(this.directory).toPath();
+        watchService = FileSystems.getDefault().newWatchService();
+        watchKey = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        rebuild();
+
+        watcher = new Thread(this::watch, "descriptor-index-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    public static synchronized LiveCorpusIndex open(String directory, int workers)
+            throws IOException, InterruptedException {
+        LiveCorpusIndex index = OPEN.get(normalize(directory));
+        if (index == null) {
+            index = new LiveCorpusIndex(directory, workers);
+            OPEN.put(index.directory, index);
+        }
+        return index;
+    }
+
+    private static String normalize(String directory) {
+        return directory.endsWith(File.separator) ? directory : directory + File.separator;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (LiveCorpusIndex.class) {
+            OPEN.remove(directory, this);
+        }
+        watchService.close();
+        watcher.interrupt();
+    }
+
+    // Um erro em um lote (imagem ilegível, evento perdido, falha de leitura) não encerra o monitoramento: o lote é
+    // descartado e o diretório é recarregado. Só quando nem a recarga funciona (por exemplo, diretório removido)
+    // o índice deixa de ser monitorado e sai de OPEN, para que o próximo open o reconstrua.
+    private void watch() {
+        try {
+            while (true) {
+                // Quando o diretório é removido a chave é cancelada, às vezes sem um novo evento; se algum arquivo
+                // ainda estiver aberto dentro dele, nem isso acontece, então a existência também é conferida
+                if (!watchKey.isValid() || !new File(directory).isDirectory()) {
+                    throw new IOException("Directory is no longer accessible");
+                }
+                WatchKey key = watchService.poll(VALIDITY_CHECK_MS, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    continue;
+                }
+                Set<String> changed = new LinkedHashSet<>();
+                boolean overflow = collect(key, changed);
+
+                // Agrupa os eventos que chegarem durante o período de espera em um único lote
+                while ((key = watchService.poll(QUIET_PERIOD_MS, TimeUnit.MILLISECONDS)) != null) {
+                    overflow |= collect(key, changed);
+                }
+                try {
+                    if (overflow) {
+                        rebuild();
+                    } else if (!changed.isEmpty()) {
+                        apply(changed);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // apply pode ter parado no meio do lote; a recarga deixa locations e snapshot consistentes
+                    IJ.log("Could not update " + directory + " due to: " + e + "; reloading directory");
+                    rebuild();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Índice fechado
+        } catch (IOException | RuntimeException e) {
+            IJ.log("Stopped watching " + directory + " due to: " + e);
+            stale();
+        }
+    }
+
+    // Tira o índice de OPEN e para o monitoramento; quem ainda tiver um Snapshot continua podendo consultá-lo
+    private void stale() {
+        synchronized (LiveCorpusIndex.class) {
+            OPEN.remove(directory, this);
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Já não há mais eventos a receber
+        }
+    }
+
+    // A chave deixa de ser válida quando o diretório é removido ou fica inacessível
+    private boolean collect(WatchKey key, Set<String> changed) throws IOException {
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            } else {
+                String name = event.context().toString();
+                if (!name.startsWith(DescriptorIndex.FILE_NAME)) {
+                    changed.add(name);
+                }
+            }
+        }
+        if (!key.reset()) {
+            throw new IOException("Directory is no longer accessible");
+        }
+        return overflow;
+    }
+
+    // Recarrega o diretório inteiro (carga inicial ou eventos perdidos), aproveitando o índice binário
+    private void rebuild() throws IOException, InterruptedException {
+        FeatureMatrix matrix = new FeatureMatrix(ImageDescriptorExtractor.DESCRIPTOR_COUNT);
+        CorpusExtractor.extract(directory, matrix, workers);
+        locations.clear();
+        for (int row = 0; row < matrix.size(); row++) {
+            locations.put(matrix.getId(row), new long[] { 0, row });
+        }
+        snapshot = new Snapshot(new FeatureMatrix[] { matrix }, new BitSet[] { new BitSet() });
+    }
+
+    private void apply(Set<String> changed) {
+        Snapshot current = snapshot;
+        int segmentCount = current.segments.length;
+        BitSet[] deleted = new BitSet[segmentCount + 1];
+        for (int s = 0; s < segmentCount; s++) {
+            deleted[s] = current.deleted[s];
+        }
+
+        FeatureMatrix added = new FeatureMatrix(ImageDescriptorExtractor.DESCRIPTOR_COUNT);
+        for (String name : changed) {
+            // A versão anterior do arquivo (se existir) é sempre apagada; a nova entra no segmento novo
+            long[] location = locations.remove(name);
+            if (location != null) {
+                int s = (int) location[0];
+                if (deleted[s] == current.deleted[s]) {
+                    deleted[s] = (BitSet) current.deleted[s].clone();
+                }
+                deleted[s].set((int) location[1]);
+            }
+            if (new File(directory, name).isFile()) {
+                double[] descriptors;
+                try {
+                    descriptors = CorpusExtractor.extract(directory, name);
+                } catch (RuntimeException e) {
+                    // Uma imagem que o ImageJ não consegue processar fica de fora, como as descartadas
+                    IJ.log("Skipped image " + name + " due to: " + e);
+                    descriptors = null;
+                }
+                if (descriptors != null) {
+                    locations.put(name, new long[] { segmentCount, added.size() });
+                    added.add(name, descriptors);
+                }
+            }
+        }
+        deleted[segmentCount] = new BitSet();
+
+        FeatureMatrix[] segments = Arrays.copyOf(current.segments, segmentCount + 1);
+        segments[segmentCount] = added;
+        Snapshot next = new Snapshot(segments, deleted);
+        snapshot = needsCompaction(next) ? compact(next) : next;
+    }
+
+    private boolean needsCompaction(Snapshot next) {
+        int total = 0;
+        for (FeatureMatrix segment : next.segments) {
+            total += segment.size();
+        }
+        return next.segments.length > MAX_SEGMENTS || total - next.liveCount > MAX_DELETED_FRACTION * total;
+    }
+
+    private Snapshot compact(Snapshot next) {
+        FeatureMatrix matrix = next.toFeatureMatrix();
+        locations.clear();
+        for (int row = 0; row < matrix.size(); row++) {
+            locations.put(matrix.getId(row), new long[] { 0, row });
+        }
+        return new Snapshot(new FeatureMatrix[] { matrix }, new BitSet[] { new BitSet() });
+    }
+}
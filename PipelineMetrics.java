@@ -0,0 +1,481 @@
+import ij.IJ;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Instrumentação da extração e da busca: histogramas de latência por etapa, imagens por segundo, imagens
+// descartadas, pontos de contorno e avaliações de distância por consulta. Imagens atendidas pelo DescriptorCache
+// contam só em CACHE_LOOKUP e nas estatísticas do cache; imagesExtracted conta as extrações completas.
+//
+// Desligada por padrão: start() devolve 0 e stop() ignora 0, então o custo nas etapas é a leitura de um volatile.
+// Ligada pelo CLI (--metrics), pelo argumento "metrics" do plugin ou pelo atributo Enabled no JMX
+// (GeometricDescriptors:type=PipelineMetrics). startReporting() escreve um resumo periódico no log do ImageJ
+// e/ou em um arquivo JSON, substituído atomicamente a cada período.
+//
+// Uso nas etapas:
+//   long start = PipelineMetrics.start();
+//   ...
+//   PipelineMetrics.stop(PipelineMetrics.Stage.SOBEL, start);
+public class PipelineMetrics implements PipelineMetricsMXBean {
+
+    public enum Stage {
+        OPEN_IMAGE, CACHE_LOOKUP, PYRAMID, PREPROCESS, SOBEL, THRESHOLD, FUSED_EDGES, CONTOURS, AXES, EXTRACT, KNN_QUERY
+    }
+
+    public static final String OBJECT_NAME = "GeometricDescriptors:type=PipelineMetrics";
+
+    private static final PipelineMetrics INSTANCE = new PipelineMetrics();
+
+    private static volatile boolean enabled;
+
+    static {
+        register();
+    }
+
+    private final Map<Stage, Histogram> stages = new EnumMap<>(Stage.class);
+    private final LongAdder imagesExtracted = new LongAdder();
+    private final LongAdder imagesSkipped = new LongAdder();
+    private final LongAdder contours = new LongAdder();
+    private final LongAdder contourPoints = new LongAdder();
+    private final LongAdder knnQueries = new LongAdder();
+    private final LongAdder distanceEvaluations = new LongAdder();
+    private volatile long resetTime = System.nanoTime();
+
+    private ScheduledExecutorService reporter;
+    // Imagens, consultas e instante do resumo anterior, para a taxa do último período
+    private long lastReportImages;
+    private long lastReportQueries;
+    private long lastReportTime;
+
+    private PipelineMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new Histogram());
+        }
+    }
+
+    public static PipelineMetrics get() {
+        return INSTANCE;
+    }
+
+    public static boolean enabled() {
+        return enabled;
+    }
+
+    // Instante de início de uma etapa, ou 0 se a instrumentação estiver desligada
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public static void stop(Stage stage, long start) {
+        if (start != 0L) {
+            INSTANCE.stages.get(stage).record(System.nanoTime() - start);
+        }
+    }
+
+    // Duração já medida, para etapas acumuladas em partes (eixos calculados contorno a contorno)
+    public static void record(Stage stage, long nanos) {
+        if (enabled) {
+            INSTANCE.stages.get(stage).record(nanos);
+        }
+    }
+
+    public static void imageExtracted(int contourCount, long pointCount) {
+        if (enabled) {
+            INSTANCE.imagesExtracted.increment();
+            INSTANCE.contours.add(contourCount);
+            INSTANCE.contourPoints.add(pointCount);
+        }
+    }
+
+    public static void imageSkipped() {
+        if (enabled) {
+            INSTANCE.imagesSkipped.increment();
+        }
+    }
+
+    public static void knnQueries(int queryCount, long evaluations) {
+        if (enabled) {
+            INSTANCE.knnQueries.add(queryCount);
+            INSTANCE.distanceEvaluations.add(evaluations);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean value) {
+        if (value && !enabled) {
+            resetTime = System.nanoTime();
+        }
+        enabled = value;
+    }
+
+    @Override
+    public long getImagesExtracted() {
+        return imagesExtracted.sum();
+    }
+
+    @Override
+    public long getImagesSkipped() {
+        return imagesSkipped.sum();
+    }
+
+    // Média desde o último reset (ou desde que a instrumentação foi ligada)
+    @Override
+    public double getImagesPerSecond() {
+        double seconds = (System.nanoTime() - resetTime) / 1e9;
+        return seconds > 0 ? imagesExtracted.sum() / seconds : 0.0;
+    }
+
+    @Override
+    public long getContourCount() {
+        return contours.sum();
+    }
+
+    @Override
+    public long getContourPoints() {
+        return contourPoints.sum();
+    }
+
+    @Override
+    public long getKnnQueries() {
+        return knnQueries.sum();
+    }
+
+    @Override
+    public long getDistanceEvaluations() {
+        return distanceEvaluations.sum();
+    }
+
+    @Override
+    public double getDistanceEvaluationsPerQuery() {
+        long queries = knnQueries.sum();
+        return queries == 0 ? 0.0 : (double) distanceEvaluations.sum() / queries;
+    }
+
+    @Override
+    public long getDescriptorCacheHits() {
+        return DescriptorCache.shared().getHits();
+    }
+
+    @Override
+    public long getDescriptorCacheMisses() {
+        return DescriptorCache.shared().getMisses();
+    }
+
+    @Override
+    public double getDescriptorCacheHitRatio() {
+        return DescriptorCache.shared().getHitRatio();
+    }
+
+    @Override
+    public Map<String, Long> getStageCounts() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        stages.forEach((stage, histogram) -> result.put(stage.name(), histogram.count()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getStageMeanMillis() {
+        return stageMillis(Histogram::mean);
+    }
+
+    @Override
+    public Map<String, Double> getStageP50Millis() {
+        return stageMillis(histogram -> histogram.quantile(0.50));
+    }
+
+    @Override
+    public Map<String, Double> getStageP95Millis() {
+        return stageMillis(histogram -> histogram.quantile(0.95));
+    }
+
+    @Override
+    public Map<String, Double> getStageP99Millis() {
+        return stageMillis(histogram -> histogram.quantile(0.99));
+    }
+
+    @Override
+    public Map<String, Double> getStageMaxMillis() {
+        return stageMillis(Histogram::max);
+    }
+
+    public Histogram getStage(Stage stage) {
+        return stages.get(stage);
+    }
+
+    @Override
+    public void reset() {
+        for (Histogram histogram : stages.values()) {
+            histogram.reset();
+        }
+        imagesExtracted.reset();
+        imagesSkipped.reset();
+        contours.reset();
+        contourPoints.reset();
+        knnQueries.reset();
+        distanceEvaluations.reset();
+        resetTime = System.nanoTime();
+        synchronized (this) {
+            lastReportImages = 0;
+            lastReportQueries = 0;
+            lastReportTime = resetTime;
+        }
+    }
+
+    // Liga a instrumentação e agenda o resumo a cada "periodSeconds"; jsonFile pode ser null.
+    // Períodos sem imagens nem consultas novas não geram resumo.
+    public synchronized void startReporting(long periodSeconds, boolean log, Path jsonFile) {
+        if (periodSeconds < 1) {
+            throw new IllegalArgumentException("Invalid metrics period: " + periodSeconds);
+        }
+        stopReporting();
+        setEnabled(true);
+        lastReportImages = imagesExtracted.sum();
+        lastReportQueries = knnQueries.sum();
+        lastReportTime = System.nanoTime();
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> {
+            if (imagesExtracted.sum() != lastReportImages || knnQueries.sum() != lastReportQueries) {
+                report(log, jsonFile);
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    // Cancela o resumo periódico; a instrumentação continua ligada
+    public synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    // Escreve um resumo imediatamente (por exemplo, os totais ao final de uma execução)
+    public synchronized void report(boolean log, Path jsonFile) {
+        if (log) {
+            IJ.log(summary());
+        }
+        if (jsonFile != null) {
+            try {
+                writeJson(jsonFile);
+            } catch (IOException e) {
+                IJ.log("Could not write metrics " + jsonFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Resumo de uma linha para o log: taxa do último período e percentis das etapas executadas
+    public synchronized String summary() {
+        long now = System.nanoTime();
+        long images = imagesExtracted.sum();
+        double seconds = (now - lastReportTime) / 1e9;
+        double rate = seconds > 0 ? (images - lastReportImages) / seconds : 0.0;
+        lastReportImages = images;
+        lastReportQueries = knnQueries.sum();
+        lastReportTime = now;
+
+        StringBuilder line = new StringBuilder(String.format(Locale.ROOT,
+                "Metrics: %d images (%.1f/s, %.1f/s overall), %d skipped, %.0f contour points/image,"
+                        + " %d queries, %.0f distance evaluations/query",
+                images, rate, getImagesPerSecond(), imagesSkipped.sum(),
+                images == 0 ? 0.0 : (double) contourPoints.sum() / images, knnQueries.sum(),
+                getDistanceEvaluationsPerQuery()));
+        DescriptorCache cache = DescriptorCache.shared();
+        if (cache.getHits() + cache.getMisses() > 0) {
+            line.append(String.format(Locale.ROOT, ", descriptor cache %d hits (%.1f%%)", cache.getHits(),
+                    100 * cache.getHitRatio()));
+        }
+        stages.forEach((stage, histogram) -> {
+            if (histogram.count() > 0) {
+                line.append(String.format(Locale.ROOT, "; %s p50 %.2f p95 %.2f ms", stage.name().toLowerCase(Locale.ROOT),
+                        histogram.quantile(0.50), histogram.quantile(0.95)));
+            }
+        });
+        return line.toString();
+    }
+
+    @Override
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"timestamp\":").append(System.currentTimeMillis());
+        json.append(",\"enabled\":").append(enabled);
+        json.append(",\"elapsedSeconds\":").append(number((System.nanoTime() - resetTime) / 1e9));
+        json.append(",\"imagesExtracted\":").append(imagesExtracted.sum());
+        json.append(",\"imagesSkipped\":").append(imagesSkipped.sum());
+        json.append(",\"imagesPerSecond\":").append(number(getImagesPerSecond()));
+        json.append(",\"contours\":").append(contours.sum());
+        json.append(",\"contourPoints\":").append(contourPoints.sum());
+        json.append(",\"knnQueries\":").append(knnQueries.sum());
+        json.append(",\"distanceEvaluations\":").append(distanceEvaluations.sum());
+        json.append(",\"distanceEvaluationsPerQuery\":").append(number(getDistanceEvaluationsPerQuery()));
+        json.append(",\"descriptorCache\":{\"hits\":").append(getDescriptorCacheHits());
+        json.append(",\"misses\":").append(getDescriptorCacheMisses());
+        json.append(",\"evictions\":").append(DescriptorCache.shared().getEvictions());
+        json.append(",\"entries\":").append(DescriptorCache.shared().size()).append('}');
+        json.append(",\"stages\":{");
+        boolean first = true;
+        for (Map.Entry<Stage, Histogram> entry : stages.entrySet()) {
+            Histogram histogram = entry.getValue();
+            json.append(first ? "" : ",").append('"').append(entry.getKey().name()).append("\":{");
+            json.append("\"count\":").append(histogram.count());
+            json.append(",\"meanMs\":").append(number(histogram.mean()));
+            json.append(",\"p50Ms\":").append(number(histogram.quantile(0.50)));
+            json.append(",\"p95Ms\":").append(number(histogram.quantile(0.95)));
+            json.append(",\"p99Ms\":").append(number(histogram.quantile(0.99)));
+            json.append(",\"maxMs\":").append(number(histogram.max())).append('}');
+            first = false;
+        }
+        return json.append("}}").toString();
+    }
+
+    // Escreve em um arquivo temporário e substitui o anterior, para que leitores nunca vejam um JSON pela metade
+    public void writeJson(Path file) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path temporary = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            writer.write(toJson());
+            writer.write('\n');
+        }
+        try {
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Map<String, Double> stageMillis(ToDoubleFunction<Histogram> value) {
+        Map<String, Double> result = new LinkedHashMap<>();
+        stages.forEach((stage, histogram) -> result.put(stage.name(), value.applyAsDouble(histogram)));
+        return result;
+    }
+
+    private static String number(double value) {
+        return Double.isFinite(value) ? String.format(Locale.ROOT, "%.4f", value) : "null";
+    }
+
+    // Um plugin recarregado pelo ImageJ tem outra classe com o mesmo nome; o registro antigo é substituído
+    private static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(INSTANCE, name);
+        } catch (JMException | SecurityException e) {
+            IJ.log("Could not register " + OBJECT_NAME + ": " + e.getMessage());
+        }
+    }
+
+    // Histograma logarítmico de durações em nanossegundos: 4 sub-faixas por potência de 2 (erro relativo < 25%),
+    // sem travas, então várias threads de extração podem gravar ao mesmo tempo
+    public static final class Histogram {
+
+        private static final int SUB_BUCKETS = 4;
+        private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            nanos = Math.max(0L, nanos);
+            buckets.incrementAndGet(bucket(nanos));
+            count.increment();
+            sum.add(nanos);
+            if (nanos > max.get()) {
+                max.accumulateAndGet(nanos, Math::max);
+            }
+        }
+
+        void reset() {
+            for (int b = 0; b < BUCKETS; b++) {
+                buckets.set(b, 0L);
+            }
+            count.reset();
+            sum.reset();
+            max.set(0L);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public double mean() {
+            long n = count.sum();
+            return n == 0 ? 0.0 : sum.sum() / 1e6 / n;
+        }
+
+        public double max() {
+            return max.get() / 1e6;
+        }
+
+        // Quantil aproximado em milissegundos: ponto médio da faixa que contém o q-ésimo valor
+        public double quantile(double q) {
+            long total = 0;
+            long[] snapshot = new long[BUCKETS];
+            for (int b = 0; b < BUCKETS; b++) {
+                snapshot[b] = buckets.get(b);
+                total += snapshot[b];
+            }
+            if (total == 0) {
+                return 0.0;
+            }
+            long rank = Math.max(1L, (long) Math.ceil(q * total));
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += snapshot[b];
+                if (seen >= rank) {
+                    double middle = (lowerBound(b) + lowerBound(b + 1)) / 2.0;
+                    return Math.min(middle, (double) max.get()) / 1e6;
+                }
+            }
+            return max();
+        }
+
+        // Valores < 4 têm uma faixa cada; acima disso a faixa é o expoente e os 2 bits seguintes ao mais alto
+        private static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+            return (exponent - 1) * SUB_BUCKETS + sub;
+        }
+
+        private static double lowerBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + 1;
+            return (double) (SUB_BUCKETS + bucket % SUB_BUCKETS) * Math.pow(2, exponent - 2);
+        }
+    }
+}
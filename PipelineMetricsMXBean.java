@@ -0,0 +1,48 @@
+import java.util.Map;
+
+// Interface JMX do PipelineMetrics (jconsole/VisualVM: GeometricDescriptors:type=PipelineMetrics).
+// Os mapas por etapa aparecem como tabelas com uma linha por etapa.
+public interface PipelineMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getImagesExtracted();
+
+    long getImagesSkipped();
+
+    double getImagesPerSecond();
+
+    long getContourCount();
+
+    long getContourPoints();
+
+    long getKnnQueries();
+
+    long getDistanceEvaluations();
+
+    double getDistanceEvaluationsPerQuery();
+
+    long getDescriptorCacheHits();
+
+    long getDescriptorCacheMisses();
+
+    double getDescriptorCacheHitRatio();
+
+    Map<String, Long> getStageCounts();
+
+    Map<String, Double> getStageMeanMillis();
+
+    Map<String, Double> getStageP50Millis();
+
+    Map<String, Double> getStageP95Millis();
+
+    Map<String, Double> getStageP99Millis();
+
+    Map<String, Double> getStageMaxMillis();
+
+    String toJson();
+
+    void reset();
+}
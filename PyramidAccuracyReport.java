@@ -0,0 +1,163 @@
+import ij.IJ;
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+// Relatório de precisão do modo pirâmide: extrai cada imagem em resolução total e reduzida e compara os
+// descritores, o tempo de extração e a busca do vizinho mais próximo (deixando a própria imagem de fora).
+// A classe de uma imagem é o prefixo do nome antes do último '-' (apple-1.gif -> apple).
+//
+// Uso: java -cp ij.jar:. PyramidAccuracyReport ["imgs forma"] [maxPixels] [ampliação]
+//
+// As imagens de "imgs forma" são pequenas; a ampliação (bilinear) simula as imagens grandes do scanner.
+// PyramidAccuracyReport "imgs forma" 200000 4 reproduz os erros citados no ImageDescriptorExtractor.
+public class PyramidAccuracyReport {
+
+    private static final String[] NAMES = { "Effective diameter", "Circularity", "Roundness", "Radius ratio" };
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        File dir = new File(args.length > 0 ? args[0] : "imgs forma");
+        int maxPixels = args.length > 1 ? Integer.parseInt(args[1]) : 32768;
+        double upscale = args.length > 2 ? Double.parseDouble(args[2]) : 1.0;
+        String[] paths = Objects.requireNonNull(dir.list());
+        Arrays.sort(paths);
+
+        // O cache devolveria os descritores da primeira extração em vez de medir a segunda
+        DescriptorCache.shared().setMaximumSize(0);
+
+        List<String> names = new ArrayList<>();
+        List<double[]> full = new ArrayList<>();
+        List<double[]> pyramid = new ArrayList<>();
+        long fullTime = 0;
+        long pyramidTime = 0;
+        long pixels = 0;
+        for (String path : paths) {
+            ImageProcessor original = open(new File(dir, path), upscale);
+            if (original == null) {
+                continue;
+            }
+            try {
+                ImageDescriptorExtractor.setPyramidMaxPixels(0);
+                long start = System.nanoTime();
+                double[] fullDescriptors = ImageDescriptorExtractor.extractDescriptors(
+                        new ImagePlus(path, original.duplicate()));
+                fullTime += System.nanoTime() - start;
+
+                ImageDescriptorExtractor.setPyramidMaxPixels(maxPixels);
+                start = System.nanoTime();
+                double[] pyramidDescriptors = ImageDescriptorExtractor.extractDescriptors(
+                        new ImagePlus(path, original));
+                pyramidTime += System.nanoTime() - start;
+
+                names.add(path);
+                full.add(fullDescriptors);
+                pyramid.add(pyramidDescriptors);
+                pixels += (long) original.getWidth() * original.getHeight();
+            } catch (IllegalArgumentException e) {
+                IJ.log("Skipped image " + path + " due to: " + e.getMessage());
+            } finally {
+                ImageDescriptorExtractor.setPyramidMaxPixels(0);
+            }
+        }
+        int n = names.size();
+        if (n == 0) {
+            System.out.println("No images in " + dir);
+            return;
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%d images, %.2f MP on average, pyramid limit %d pixels",
+                n, pixels / 1e6 / n, maxPixels));
+        System.out.println(String.format(Locale.ROOT, "Full resolution: %d ms, pyramid: %d ms (%.1fx)",
+                fullTime / 1000000, pyramidTime / 1000000, (double) fullTime / Math.max(1, pyramidTime)));
+
+        // Erro relativo por descritor; descritores não finitos (contornos degenerados) ficam de fora
+        System.out.println("Descriptor            mean rel. error   median   max rel. error   worst image");
+        for (int d = 0; d < ImageDescriptorExtractor.DESCRIPTOR_COUNT; d++) {
+            double[] errors = new double[n];
+            int count = 0;
+            double max = -1;
+            String worst = "";
+            for (int i = 0; i < n; i++) {
+                double a = full.get(i)[d];
+                double b = pyramid.get(i)[d];
+                if (!Double.isFinite(a) || !Double.isFinite(b) || a == 0) {
+                    continue;
+                }
+                double error = Math.abs(b - a) / Math.abs(a);
+                errors[count++] = error;
+                if (error > max) {
+                    max = error;
+                    worst = names.get(i);
+                }
+            }
+            Arrays.sort(errors, 0, count);
+            double mean = count == 0 ? 0 : Arrays.stream(errors, 0, count).sum() / count;
+            double median = count == 0 ? 0 : errors[count / 2];
+            System.out.println(String.format(Locale.ROOT, "%-20s  %14.2f%%  %6.2f%%  %14.2f%%   %s", NAMES[d],
+                    100 * mean, 100 * median, 100 * Math.max(0, max), worst));
+        }
+
+        // Vizinho mais próximo (euclidiano) de cada imagem entre as demais, nos dois modos
+        int sameNeighbor = 0;
+        int fullCorrect = 0;
+        int pyramidCorrect = 0;
+        for (int i = 0; i < n; i++) {
+            int a = nearest(full, i);
+            int b = nearest(pyramid, i);
+            if (a == b) {
+                sameNeighbor++;
+            }
+            if (a >= 0 && label(names.get(a)).equals(label(names.get(i)))) {
+                fullCorrect++;
+            }
+            if (b >= 0 && label(names.get(b)).equals(label(names.get(i)))) {
+                pyramidCorrect++;
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "Same nearest neighbor: %d/%d (%.1f%%)", sameNeighbor, n,
+                100.0 * sameNeighbor / n));
+        System.out.println(String.format(Locale.ROOT, "1-NN class accuracy: full %.1f%%, pyramid %.1f%%",
+                100.0 * fullCorrect / n, 100.0 * pyramidCorrect / n));
+    }
+
+    private static ImageProcessor open(File file, double upscale) {
+        ImagePlus image = IJ.openImage(file.getPath());
+        if (image == null) {
+            return null;
+        }
+        ImageProcessor ip = image.getProcessor();
+        if (upscale != 1.0) {
+            ip.setInterpolationMethod(ImageProcessor.BILINEAR);
+            ip = ip.resize((int) Math.round(ip.getWidth() * upscale), (int) Math.round(ip.getHeight() * upscale));
+        }
+        return ip;
+    }
+
+    private static int nearest(List<double[]> vectors, int query) {
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < vectors.size(); i++) {
+            if (i == query) {
+                continue;
+            }
+            double distance = KNNFinder.Metric.EUCLIDEAN.distance(vectors.get(query), vectors.get(i));
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static String label(String name) {
+        int dash = name.lastIndexOf('-');
+        return dash > 0 ? name.substring(0, dash) : name;
+    }
+}
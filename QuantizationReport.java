@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+// Relatório do QuantizedIndex: recall@k em relação à busca exata do KNNFinder, tempo por consulta e bytes por
+// vetor, para INT8 e INT16 com e sem reordenação exata, e os pesos de cada dimensão usados na varredura.
+//
+// O acervo sintético replica os descritores de "imgs forma" com ruído multiplicativo gaussiano ("jitter") até
+// "tamanho" linhas, para simular um acervo grande; as consultas são geradas da mesma forma.
+//
+// Uso: java -cp ij.jar:. QuantizationReport ["imgs forma"] [tamanho] [k] [métrica] [jitter]
+public class QuantizationReport {
+
+    private static final int QUERIES = 200;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        String dir = args.length > 0 ? args[0] : "imgs forma";
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        String distanceMetric = args.length > 3 ? args[3] : "euclidean";
+        double jitter = args.length > 4 ? Double.parseDouble(args[4]) : 0.05;
+        KNNFinder.Metric.fromName(distanceMetric);
+
+        // Descritores reais; vetores com valores não finitos (contornos degenerados) ficam de fora
+        FeatureMatrix extracted = new FeatureMatrix(ImageDescriptorExtractor.DESCRIPTOR_COUNT);
+        CorpusExtractor.extract(dir.endsWith("/") ? dir : dir + "/", extracted,
+                Runtime.getRuntime().availableProcessors());
+        List<double[]> base = new ArrayList<>();
+        for (int i = 0; i < extracted.size(); i++) {
+            double[] row = extracted.getRow(i);
+            boolean finite = true;
+            for (double value : row) {
+                finite &= Double.isFinite(value);
+            }
+            if (finite) {
+                base.add(row);
+            }
+        }
+        if (base.isEmpty()) {
+            System.out.println("No usable descriptors in " + dir);
+            return;
+        }
+
+        Random random = new Random(42);
+        FeatureMatrix corpus = new FeatureMatrix(ImageDescriptorExtractor.DESCRIPTOR_COUNT,
+                FeatureMatrix.Layout.ROW_MAJOR, FeatureMatrix.Precision.DOUBLE, size);
+        for (int i = 0; i < size; i++) {
+            corpus.add("v" + i, perturb(base.get(i % base.size()), jitter, random));
+        }
+        FeatureMatrix queries = new FeatureMatrix(ImageDescriptorExtractor.DESCRIPTOR_COUNT,
+                FeatureMatrix.Layout.ROW_MAJOR, FeatureMatrix.Precision.DOUBLE, QUERIES);
+        for (int q = 0; q < QUERIES; q++) {
+            queries.add("q" + q, perturb(base.get(random.nextInt(base.size())), jitter, random));
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%d vectors from %d images, %d queries, k=%d, %s, jitter %.2f",
+                size, base.size(), QUERIES, k, distanceMetric, jitter));
+
+        // Referência exata: a mesma varredura linear usada pelo plugin
+        KNNFinder.Neighbor[][] exact = new KNNFinder.Neighbor[QUERIES][];
+        for (int q = 0; q < Math.min(20, QUERIES); q++) {
+            KNNFinder.findKNearestNeighbors(queries.getRow(q), corpus, k, distanceMetric);
+        }
+        long exactTime = time(() -> {
+            for (int q = 0; q < QUERIES; q++) {
+                exact[q] = KNNFinder.findKNearestNeighbors(queries.getRow(q), corpus, k, distanceMetric);
+            }
+        });
+        System.out.println("Storage  rerank  bytes/vector  recall@k   ms/query");
+        System.out.println(String.format(Locale.ROOT, "double   -       %12d  %7.4f  %9.3f",
+                8 * corpus.getDimensions(), 1.0, exactTime / 1e6 / QUERIES));
+
+        List<String> weights = new ArrayList<>();
+        for (QuantizedIndex.Bits bits : QuantizedIndex.Bits.values()) {
+            QuantizedIndex index = new QuantizedIndex(corpus, bits);
+            // Um peso 0 tiraria a dimensão da distância aproximada
+            weights.add(bits.name().toLowerCase(Locale.ROOT) + " weights "
+                    + Arrays.toString(index.getWeights(distanceMetric)));
+            for (int rerank : new int[] { 0, 4 * k, 64 * k }) {
+                KNNFinder.Neighbor[][] approximate = new KNNFinder.Neighbor[QUERIES][];
+                // Uma passada de aquecimento antes da medida
+                for (int q = 0; q < Math.min(20, QUERIES); q++) {
+                    index.findKNearestNeighbors(queries.getRow(q), k, distanceMetric, rerank);
+                }
+                long elapsed = time(() -> {
+                    for (int q = 0; q < QUERIES; q++) {
+                        approximate[q] = index.findKNearestNeighbors(queries.getRow(q), k, distanceMetric, rerank);
+                    }
+                });
+                System.out.println(String.format(Locale.ROOT, "%-7s  %-6s  %12d  %7.4f  %9.3f",
+                        bits.name().toLowerCase(Locale.ROOT), rerank > 0 ? Integer.toString(rerank) : "-",
+                        index.getBytesPerVector(), recall(exact, approximate, k), elapsed / 1e6 / QUERIES));
+            }
+        }
+        weights.forEach(System.out::println);
+    }
+
+    private static double[] perturb(double[] vector, double jitter, Random random) {
+        double[] result = new double[vector.length];
+        for (int d = 0; d < vector.length; d++) {
+            result[d] = vector[d] * (1 + jitter * random.nextGaussian());
+        }
+        return result;
+    }
+
+    // Fração dos k vizinhos exatos encontrados pela busca aproximada, na média das consultas
+    private static double recall(KNNFinder.Neighbor[][] exact, KNNFinder.Neighbor[][] approximate, int k) {
+        long found = 0;
+        for (int q = 0; q < exact.length; q++) {
+            Set<Integer> expected = new HashSet<>();
+            for (KNNFinder.Neighbor neighbor : exact[q]) {
+                expected.add(neighbor.index);
+            }
+            for (KNNFinder.Neighbor neighbor : approximate[q]) {
+                if (expected.contains(neighbor.index)) {
+                    found++;
+                }
+            }
+        }
+        return (double) found / ((long) exact.length * k);
+    }
+
+    private static long time(Runnable task) {
+        long start = System.nanoTime();
+        task.run();
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,296 @@
+import java.util.Arrays;
+
+// Índice com quantização escalar por dimensão: cada descritor vira um código de 8 ou 16 bits dentro da faixa da
+// sua dimensão no acervo. Em INT8 a faixa vai do percentil 0,5 ao 99,5: os valores fora dela (por exemplo
+// razões de raio de várias centenas) ficam no código extremo em vez de esticar o passo de todos os outros. Com 4
+// descritores, uma linha ocupa 4 bytes (INT8) ou 8 bytes (INT16) em vez de 32, então a varredura linear lê 8x ou
+// 4x menos memória.
+//
+// A consulta também é quantizada (com uma margem de uma faixa além de cada extremo) e as diferenças de códigos
+// são inteiras; cada termo é multiplicado por um peso por dimensão, proporcional ao passo (manhattan) ou ao
+// quadrado do passo (euclidiana). Em INT8 os pesos são inteiros e a soma é em long; as distâncias aproximadas
+// voltam para a unidade original no fim. Em INT16 o quadrado de uma diferença já ocupa 34 bits e sobrariam só 24
+// bits para os pesos inteiros: uma dimensão com passo abaixo de 2^-12,5 vezes o maior ficaria com peso euclidiano
+// 0 (em "imgs forma" o passo da circularidade é ~2^-16 do da razão de raio). Por isso INT16 usa como peso o
+// próprio passo (ou seu quadrado) e soma em double, já na unidade original.
+// Com "rerank" > 0 os melhores candidatos aproximados são reordenados pelas distâncias exatas da FeatureMatrix.
+//
+// Valores não finitos (contornos degenerados) ficam no código extremo correspondente; NaN vai para o mínimo.
+public class QuantizedIndex {
+
+    // Limite de bits da soma: dimensões x diferença máxima x peso máximo cabem em um long com folga
+    private static final int SUM_BITS = 60;
+
+    // Percentual de valores de cada ponta deixado fora da faixa quantizada. Com 16 bits o passo da faixa inteira
+    // já é bem menor que as diferenças entre vizinhos e cortar as pontas só piora as consultas perto delas.
+    public enum Bits {
+        INT8(8, 0.5), INT16(16, 0.0);
+
+        private final int bits;
+        private final double clipPercentile;
+
+        Bits(int bits, double clipPercentile) {
+            this.bits = bits;
+            this.clipPercentile = clipPercentile;
+        }
+
+        public int getBits() {
+            return bits;
+        }
+
+        public double getClipPercentile() {
+            return clipPercentile;
+        }
+
+        int levels() {
+            return 1 << bits;
+        }
+    }
+
+    private final FeatureMatrix featureVectors;
+    private final Bits bits;
+    private final int dimensions;
+    private final int rows;
+
+    // Código = round((valor - minimum) * scale), guardado com sinal (código - levels/2)
+    private final double[] minimum;
+    private final double[] scale;
+    // Passo de cada dimensão (unidades por código)
+    private final double[] step;
+    // INT8: pesos inteiros das distâncias manhattan e euclidiana e o valor de uma unidade da soma na métrica
+    // original. INT16: pesos double na unidade original (passo e quadrado do passo), com unidade 1.
+    private final long[] manhattanWeights;
+    private final long[] euclideanWeights;
+    private final double[] manhattanSteps;
+    private final double[] euclideanSteps;
+    private final double manhattanUnit;
+    private final double euclideanUnit;
+    private final byte[] byteCodes;
+    private final short[] shortCodes;
+
+    public QuantizedIndex(FeatureMatrix featureVectors, Bits bits) {
+        this.featureVectors = featureVectors;
+        this.bits = bits;
+        this.dimensions = featureVectors.getDimensions();
+        this.rows = featureVectors.size();
+        this.minimum = new double[dimensions];
+        this.scale = new double[dimensions];
+        this.step = new double[dimensions];
+
+        double[] values = new double[rows];
+        double maximumStep = 0.0;
+        for (int d = 0; d < dimensions; d++) {
+            int count = 0;
+            for (int i = 0; i < rows; i++) {
+                double value = featureVectors.get(i, d);
+                if (Double.isFinite(value)) {
+                    values[count++] = value;
+                }
+            }
+            double maximum = 0.0;
+            if (count > 0) {
+                Arrays.sort(values, 0, count);
+                int clipped = (int) (count * bits.getClipPercentile() / 100);
+                minimum[d] = values[clipped];
+                maximum = values[count - 1 - clipped];
+            }
+            double range = maximum - minimum[d];
+            scale[d] = range > 0 ? (bits.levels() - 1) / range : 0.0;
+            step[d] = range > 0 ? range / (bits.levels() - 1) : 0.0;
+            maximumStep = Math.max(maximumStep, step[d]);
+        }
+
+        // A diferença entre a consulta e um código fica abaixo de 2 * levels; o peso da dimensão de maior passo
+        // é a maior potência de 2 que mantém a soma das dimensões abaixo de 2^SUM_BITS. Uma dimensão com passo
+        // fica com peso ao menos 1, para nunca sumir da distância.
+        if (bits == Bits.INT8) {
+            int dimensionBits = 32 - Integer.numberOfLeadingZeros(Math.max(0, dimensions - 1));
+            int manhattanShift = SUM_BITS - dimensionBits - (bits.getBits() + 1);
+            int euclideanShift = SUM_BITS - dimensionBits - 2 * (bits.getBits() + 1);
+            manhattanWeights = new long[dimensions];
+            euclideanWeights = new long[dimensions];
+            for (int d = 0; d < dimensions; d++) {
+                double ratio = maximumStep > 0 ? step[d] / maximumStep : 0.0;
+                long minimumWeight = step[d] > 0 ? 1 : 0;
+                manhattanWeights[d] = Math.max(minimumWeight, Math.round(Math.scalb(ratio, manhattanShift)));
+                euclideanWeights[d] = Math.max(minimumWeight, Math.round(Math.scalb(ratio * ratio, euclideanShift)));
+            }
+            manhattanUnit = Math.scalb(maximumStep, -manhattanShift);
+            euclideanUnit = Math.scalb(maximumStep * maximumStep, -euclideanShift);
+            manhattanSteps = null;
+            euclideanSteps = null;
+        } else {
+            manhattanWeights = null;
+            euclideanWeights = null;
+            manhattanSteps = step.clone();
+            euclideanSteps = new double[dimensions];
+            for (int d = 0; d < dimensions; d++) {
+                euclideanSteps[d] = step[d] * step[d];
+            }
+            manhattanUnit = 1.0;
+            euclideanUnit = 1.0;
+        }
+
+        int offset = bits.levels() / 2;
+        byteCodes = bits == Bits.INT8 ? new byte[rows * dimensions] : null;
+        shortCodes = bits == Bits.INT16 ? new short[rows * dimensions] : null;
+        for (int i = 0; i < rows; i++) {
+            for (int d = 0; d < dimensions; d++) {
+                int code = quantize(featureVectors.get(i, d), d) - offset;
+                if (byteCodes != null) {
+                    byteCodes[i * dimensions + d] = (byte) code;
+                } else {
+                    shortCodes[i * dimensions + d] = (short) code;
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return rows;
+    }
+
+    public Bits getBits() {
+        return bits;
+    }
+
+    public int getBytesPerVector() {
+        return dimensions * bits.getBits() / 8;
+    }
+
+    // Peso de cada dimensão na varredura: inteiro em INT8, passo ou quadrado do passo em INT16
+    public double[] getWeights(String distanceMetric) {
+        boolean euclidean = KNNFinder.Metric.fromName(distanceMetric) == KNNFinder.Metric.EUCLIDEAN;
+        if (bits == Bits.INT16) {
+            return (euclidean ? euclideanSteps : manhattanSteps).clone();
+        }
+        long[] weights = euclidean ? euclideanWeights : manhattanWeights;
+        double[] result = new double[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            result[d] = weights[d];
+        }
+        return result;
+    }
+
+    // Valor reconstruído a partir do código, para medir o erro de quantização
+    public double getDequantized(int row, int dimension) {
+        int index = row * dimensions + dimension;
+        int code = (byteCodes != null ? byteCodes[index] : shortCodes[index]) + bits.levels() / 2;
+        return minimum[dimension] + code * step[dimension];
+    }
+
+    public KNNFinder.Neighbor[] findKNearestNeighbors(double[] refVector, int k, String distanceMetric) {
+        return findKNearestNeighbors(refVector, k, distanceMetric, 0);
+    }
+
+    // "rerank": número de candidatos aproximados reordenados pela distância exata (0 devolve as aproximadas)
+    public KNNFinder.Neighbor[] findKNearestNeighbors(double[] refVector, int k, String distanceMetric,
+            int rerank) {
+        KNNFinder.Metric metric = KNNFinder.Metric.fromName(distanceMetric);
+        if (refVector.length != dimensions) {
+            throw new IllegalArgumentException("Vector has " + refVector.length + " dimensions, expected "
+                    + dimensions);
+        }
+        long start = PipelineMetrics.start();
+
+        // Consulta quantizada na mesma escala com sinal dos códigos
+        int offset = bits.levels() / 2;
+        int[] query = new int[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            query[d] = quantizeQuery(refVector[d], d) - offset;
+        }
+        boolean euclidean = metric == KNNFinder.Metric.EUCLIDEAN;
+        TopK candidates = new TopK(Math.max(k, rerank));
+        if (byteCodes != null) {
+            scanInt8(query, euclidean ? euclideanWeights : manhattanWeights, euclidean, candidates);
+        } else {
+            scanInt16(query, euclidean ? euclideanSteps : manhattanSteps, euclidean, candidates);
+        }
+
+        KNNFinder.Neighbor[] neighbors;
+        if (rerank <= 0) {
+            // Somas convertidas para a unidade original antes da métrica (raiz quadrada na euclidiana)
+            double unit = euclidean ? euclideanUnit : manhattanUnit;
+            neighbors = candidates.toNeighbors((FeatureMatrix) null, null);
+            for (int i = 0; i < neighbors.length; i++) {
+                int index = neighbors[i].index;
+                neighbors[i] = new KNNFinder.Neighbor(metric.fromRawDistance(neighbors[i].distance * unit),
+                        featureVectors.getId(index), index);
+            }
+        } else {
+            TopK topK = new TopK(k);
+            double[] row = new double[dimensions];
+            for (KNNFinder.Neighbor candidate : candidates.toNeighbors((FeatureMatrix) null, null)) {
+                featureVectors.getRow(candidate.index, row);
+                topK.offer(candidate.index, metric.rawDistance(refVector, row));
+            }
+            neighbors = topK.toNeighbors(featureVectors, metric);
+        }
+        PipelineMetrics.stop(PipelineMetrics.Stage.KNN_QUERY, start);
+        PipelineMetrics.knnQueries(1, rows + (long) Math.max(0, rerank));
+        return neighbors;
+    }
+
+    // Varreduras separadas por métrica, sem desvio no laço interno: a soma é interrompida assim que a distância
+    // parcial alcança o k-ésimo melhor atual. As linhas são visitadas em ordem crescente e o TopK desempata pelo
+    // índice, então uma linha empatada com o limite nunca entraria; com códigos grosseiros os empates são muitos.
+    private void scanInt8(int[] query, long[] weights, boolean euclidean, TopK topK) {
+        byte[] codes = byteCodes;
+        long threshold = (long) topK.threshold();
+        for (int i = 0, offset = 0; i < rows; i++, offset += dimensions) {
+            long sum = 0;
+            if (euclidean) {
+                for (int d = 0; d < dimensions && sum < threshold; d++) {
+                    int diff = query[d] - codes[offset + d];
+                    sum += diff * diff * weights[d];
+                }
+            } else {
+                for (int d = 0; d < dimensions && sum < threshold; d++) {
+                    sum += Math.abs(query[d] - codes[offset + d]) * weights[d];
+                }
+            }
+            if (sum < threshold && topK.offer(i, sum)) {
+                threshold = (long) topK.threshold();
+            }
+        }
+    }
+
+    private void scanInt16(int[] query, double[] weights, boolean euclidean, TopK topK) {
+        short[] codes = shortCodes;
+        double threshold = topK.threshold();
+        for (int i = 0, offset = 0; i < rows; i++, offset += dimensions) {
+            double sum = 0.0;
+            if (euclidean) {
+                for (int d = 0; d < dimensions && sum < threshold; d++) {
+                    double diff = query[d] - codes[offset + d];
+                    sum += diff * diff * weights[d];
+                }
+            } else {
+                for (int d = 0; d < dimensions && sum < threshold; d++) {
+                    sum += Math.abs(query[d] - codes[offset + d]) * weights[d];
+                }
+            }
+            if (sum < threshold && topK.offer(i, sum)) {
+                threshold = topK.threshold();
+            }
+        }
+    }
+
+    private int quantize(double value, int dimension) {
+        if (Double.isNaN(value)) {
+            return 0;
+        }
+        long code = Math.round((value - minimum[dimension]) * scale[dimension]);
+        return (int) Math.max(0, Math.min(bits.levels() - 1, code));
+    }
+
+    // Como quantize, mas com uma faixa de margem de cada lado: consultas fora da faixa do acervo continuam
+    // ordenando os códigos pela distância real
+    private int quantizeQuery(double value, int dimension) {
+        if (Double.isNaN(value)) {
+            return 0;
+        }
+        long code = Math.round((value - minimum[dimension]) * scale[dimension]);
+        return (int) Math.max(-bits.levels(), Math.min(2 * bits.levels() - 1, code));
+    }
+}
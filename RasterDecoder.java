@@ -0,0 +1,147 @@
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+
+// Decodificador leve para o acervo: lê a primeira imagem de um arquivo (GIF, PNG, TIFF, ...) pelo ImageIO
+// diretamente em um raster de 8 bits, sem ImagePlus, calibração, metadados ou imagem AWT.
+//
+// Cada thread usa o seu próprio contexto (forCurrentThread) com os ImageReaders já criados e o buffer de pixels.
+// O buffer tem exatamente largura x altura bytes (exigência dos processadores do ImageJ) e é reaproveitado
+// enquanto as imagens tiverem o mesmo número de pixels, como nos lotes do scanner. O conteúdo vale até a próxima
+// chamada de decode na mesma thread.
+//
+// Só imagens de uma banda com até 8 bits entram por este caminho: paleta (índices crus, como o ImageJ guarda
+// GIFs) ou cinza de 8 bits. Para as demais (RGB, 16 bits, menos de 8 bits fora do GIF) decode devolve false e o
+// chamador usa IJ.openImage, para que os descritores continuem iguais aos do caminho com ImagePlus.
+public class RasterDecoder {
+
+    private static final ThreadLocal<RasterDecoder> CONTEXT = ThreadLocal.withInitial(RasterDecoder::new);
+
+    // Leitores já usados por esta thread; o último que reconheceu um arquivo é testado primeiro
+    private final List<ImageReader> readers = new ArrayList<>();
+    private byte[] pixels = new byte[0];
+    private int width;
+    private int height;
+
+    public static RasterDecoder forCurrentThread() {
+        return CONTEXT.get();
+    }
+
+    // false se o arquivo não for uma imagem reconhecida ou se o formato de pixel não for suportado
+    public boolean decode(File file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) {
+                return false;
+            }
+            ImageReader reader = findReader(input);
+            if (reader == null) {
+                return false;
+            }
+            try {
+                reader.setInput(input, true, true);
+                return read(reader);
+            } finally {
+                reader.setInput(null);
+            }
+        }
+    }
+
+    public byte[] getPixels() {
+        return pixels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    private ImageReader findReader(ImageInputStream input) throws IOException {
+        for (int i = 0; i < readers.size(); i++) {
+            ImageReader reader = readers.get(i);
+            if (reader.getOriginatingProvider().canDecodeInput(input)) {
+                if (i > 0) {
+                    readers.remove(i);
+                    readers.add(0, reader);
+                }
+                return reader;
+            }
+        }
+        Iterator<ImageReader> candidates = ImageIO.getImageReaders(input);
+        if (!candidates.hasNext()) {
+            return null;
+        }
+        ImageReader reader = candidates.next();
+        readers.add(0, reader);
+        return reader;
+    }
+
+    private boolean read(ImageReader reader) throws IOException {
+        ImageTypeSpecifier type = reader.getRawImageType(0);
+        if (type == null) {
+            Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+            type = types.hasNext() ? types.next() : null;
+        }
+        if (type == null) {
+            return false;
+        }
+        ColorModel colorModel = destinationColorModel(type, "gif".equalsIgnoreCase(reader.getFormatName()));
+        if (colorModel == null) {
+            return false;
+        }
+
+        int imageWidth = reader.getWidth(0);
+        int imageHeight = reader.getHeight(0);
+        int size = imageWidth * imageHeight;
+        if (pixels.length != size) {
+            pixels = new byte[size];
+        }
+        width = imageWidth;
+        height = imageHeight;
+
+        // O leitor escreve direto no buffer através de um raster de 8 bits por pixel
+        WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(pixels, size), imageWidth,
+                imageHeight, imageWidth, 1, new int[] { 0 }, null);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setDestination(new BufferedImage(colorModel, raster, false, null));
+        reader.read(0, param);
+        return true;
+    }
+
+    // Modelo de cor compatível com um raster de 8 bits, ou null se o tipo não for suportado. Paletas com menos de
+    // 8 bits só são aceitas em GIF: o ImageJ guarda os índices crus, mas converte PNG/TIFF de 1 bit para 0/255.
+    private static ColorModel destinationColorModel(ImageTypeSpecifier type, boolean gif) {
+        SampleModel sampleModel = type.getSampleModel();
+        ColorModel colorModel = type.getColorModel();
+        if (sampleModel.getNumBands() != 1) {
+            return null;
+        }
+        int bits = sampleModel.getSampleSize(0);
+        if (colorModel instanceof IndexColorModel && (bits == 8 || gif && bits < 8)) {
+            return colorModel;
+        }
+        if (colorModel instanceof ComponentColorModel && bits == 8
+                && colorModel.getColorSpace().getType() == ColorSpace.TYPE_GRAY) {
+            return colorModel;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,172 @@
+import java.util.Arrays;
+
+// Medidas de forma calculadas enquanto o ContourTracer percorre os contornos, ponto a ponto, sem guardar a lista
+// de contornos: área (fórmula do laço), perímetro, momentos brutos dos pontos e eixos maior/menor.
+// Cada contorno é aberto pelo primeiro addPoint e fechado por endContour; reset() prepara uma nova imagem.
+public class ShapeAccumulator {
+
+    // Contorno atual
+    private int count;
+    private int firstX;
+    private int firstY;
+    private int lastX;
+    private int lastY;
+    // Dobro da área com sinal do contorno atual (soma do laço); inteira, então exata
+    private long twiceArea;
+    // Chaves dos pontos do contorno atual para o fecho convexo; o buffer é reutilizado entre contornos e imagens
+    private long[] keys = new long[1024];
+
+    // Totais da imagem
+    private int contourCount;
+    private double area;
+    private double perimeter;
+    private long maxDistSquared;
+    private double minDist;
+    private long m00;
+    private long m10;
+    private long m01;
+    private long m20;
+    private long m11;
+    private long m02;
+    // Tempo gasto nos eixos (fecho convexo e vizinhos), medido só com o PipelineMetrics ligado
+    private long axesNanos;
+
+    public ShapeAccumulator() {
+        reset();
+    }
+
+    public void reset() {
+        count = 0;
+        twiceArea = 0;
+        contourCount = 0;
+        area = 0;
+        perimeter = 0;
+        maxDistSquared = 0;
+        minDist = Double.MAX_VALUE;
+        m00 = m10 = m01 = m20 = m11 = m02 = 0;
+        axesNanos = 0;
+    }
+
+    public void addPoint(int x, int y) {
+        if (count == 0) {
+            firstX = x;
+            firstY = y;
+        } else {
+            addEdge(lastX, lastY, x, y);
+        }
+        lastX = x;
+        lastY = y;
+
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+        }
+        keys[count++] = ConvexHull.key(x, y);
+
+        m00++;
+        m10 += x;
+        m01 += y;
+        m20 += (long) x * x;
+        m11 += (long) x * y;
+        m02 += (long) y * y;
+    }
+
+    public void endContour() {
+        if (count == 0) {
+            return;
+        }
+        // Aresta de fechamento do último ponto para o primeiro
+        addEdge(lastX, lastY, firstX, firstY);
+        area += Math.abs((double) twiceArea) / 2.0;
+
+        // Eixo maior: diâmetro do fecho convexo (rotating calipers), O(n log n).
+        // Eixo menor: menor distância entre dois pontos de um mesmo contorno. Como os pontos de um contorno são
+        // pixels distintos e consecutivos são vizinhos-8, ela vale 1 se houver dois pontos vizinhos-4 e sqrt(2)
+        // caso contrário.
+        long start = PipelineMetrics.start();
+        if (count >= 2) {
+            Arrays.sort(keys, 0, count);
+            maxDistSquared = Math.max(maxDistSquared, new ConvexHull(keys, count).diameterSquared());
+            if (minDist > 1.0) {
+                minDist = Math.min(minDist, hasAxisNeighbors(keys, count) ? 1.0 : Math.sqrt(2));
+            }
+        }
+        if (start != 0L) {
+            axesNanos += System.nanoTime() - start;
+        }
+
+        contourCount++;
+        count = 0;
+        twiceArea = 0;
+    }
+
+    public int getContourCount() {
+        return contourCount;
+    }
+
+    public long getPointCount() {
+        return m00;
+    }
+
+    // Soma do tempo dos eixos de todos os contornos, em nanossegundos (0 com o PipelineMetrics desligado)
+    public long getAxesNanos() {
+        return axesNanos;
+    }
+
+    public double getArea() {
+        return area;
+    }
+
+    public double getPerimeter() {
+        return perimeter;
+    }
+
+    public double getMajorAxis() {
+        return Math.sqrt(maxDistSquared);
+    }
+
+    // Double.MAX_VALUE quando nenhum contorno tem dois pontos
+    public double getMinorAxis() {
+        return minDist;
+    }
+
+    // Momento bruto m_pq = soma de x^p * y^q sobre os pontos de todos os contornos, para p + q <= 2
+    public double getRawMoment(int p, int q) {
+        switch (p * 3 + q) {
+            case 0:
+                return m00;
+            case 3:
+                return m10;
+            case 1:
+                return m01;
+            case 6:
+                return m20;
+            case 4:
+                return m11;
+            case 2:
+                return m02;
+            default:
+                throw new IllegalArgumentException("Unsupported moment order: m" + p + q);
+        }
+    }
+
+    // Mesma ordem de soma do cálculo original, aresta por aresta, para manter o resultado idêntico
+    private void addEdge(int x1, int y1, int x2, int y2) {
+        twiceArea += (long) x1 * y2 - (long) y1 * x2;
+        int dx = x2 - x1;
+        int dy = y2 - y1;
+        perimeter += Math.sqrt(dx * dx + dy * dy);
+    }
+
+    // Verifica se algum ponto tem o vizinho (x, y + 1) ou (x + 1, y) no mesmo contorno
+    private static boolean hasAxisNeighbors(long[] sortedKeys, int n) {
+        for (int i = 0; i < n; i++) {
+            if (i + 1 < n && sortedKeys[i + 1] == sortedKeys[i] + 1) {
+                return true;
+            }
+            if (Arrays.binarySearch(sortedKeys, 0, n, sortedKeys[i] + (1L << 32)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.function.IntFunction;
+
+// Heap de máximo limitado a k elementos sobre arrays primitivos: a raiz é sempre o pior dos k melhores
+public class TopK {
+
+    private final int k;
+    private final int[] indices;
+    private final double[] distances;
+    private int size;
+
+    public TopK(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("Invalid value of k: " + k);
+        }
+        this.k = k;
+        this.indices = new int[k];
+        this.distances = new double[k];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return k;
+    }
+
+    public boolean isFull() {
+        return size == k;
+    }
+
+    // Pior distância aceita no momento; qualquer candidato acima dela pode ser descartado
+    public double threshold() {
+        return size < k ? Double.POSITIVE_INFINITY : distances[0];
+    }
+
+    public boolean offer(int index, double distance) {
+        if (size < k) {
+            int i = size++;
+            siftUp(i, index, distance);
+            return true;
+        }
+        if (!worse(distances[0], indices[0], distance, index)) {
+            return false;
+        }
+        siftDown(0, index, distance);
+        return true;
+    }
+
+    // Remove os elementos em ordem crescente de distância; os valores são convertidos com "metric" se não for nula
+    public KNNFinder.Neighbor[] toNeighbors(FeatureMatrix featureVectors, KNNFinder.Metric metric) {
+        return toNeighbors(featureVectors != null ? featureVectors::getId : null, metric);
+    }
+
+    // "names" resolve o nome da imagem a partir do índice guardado no heap
+    public KNNFinder.Neighbor[] toNeighbors(IntFunction<String> names, KNNFinder.Metric metric) {
+        KNNFinder.Neighbor[] neighbors = new KNNFinder.Neighbor[size];
+        while (size > 0) {
+            int index = indices[0];
+            double distance = distances[0];
+            int last = --size;
+            if (last > 0) {
+                siftDown(0, indices[last], distances[last]);
+            }
+            double value = metric != null ? metric.fromRawDistance(distance) : distance;
+            String name = names != null ? names.apply(index) : null;
+            neighbors[last] = new KNNFinder.Neighbor(value, name, index);
+        }
+        return neighbors;
+    }
+
+    private void siftUp(int i, int index, double distance) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!worse(distance, index, distances[parent], indices[parent])) {
+                break;
+            }
+            indices[i] = indices[parent];
+            distances[i] = distances[parent];
+            i = parent;
+        }
+        indices[i] = index;
+        distances[i] = distance;
+    }
+
+    private void siftDown(int i, int index, double distance) {
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && worse(distances[right], indices[right], distances[child], indices[child])) {
+                child = right;
+            }
+            if (!worse(distances[child], indices[child], distance, index)) {
+                break;
+            }
+            indices[i] = indices[child];
+            distances[i] = distances[child];
+            i = child;
+        }
+        indices[i] = index;
+        distances[i] = distance;
+    }
+
+    // Empates são desfeitos pelo índice para que o resultado seja determinístico
+    private static boolean worse(double d1, int i1, double d2, int i2) {
+        return d1 > d2 || (d1 == d2 && i1 > i2);
+    }
+}
@@ -0,0 +1,288 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Árvore de pontos de vantagem: usa apenas a desigualdade triangular, então serve para qualquer KNNFinder.Metric
+public class VPTreeIndex {
+
+    private static final int LEAF_SIZE = 8;
+
+    private final FeatureMatrix featureVectors;
+    private final KNNFinder.Metric metric;
+    private final int dimensions;
+
+    // Pontos em ordem da árvore (row-major) e o índice original de cada um na FeatureMatrix
+    private final double[] points;
+    private final int[] rows;
+    // Só as primeiras treeSize posições estão na árvore; o resto são linhas degeneradas, varridas linearmente
+    private final int treeSize;
+
+    // Nó interno: ponto de vantagem em "start", filhos "inside" (distância <= mu) e "outside" (>= mu); folha tem inside < 0
+    private final double[] mu;
+    private final int[] inside;
+    private final int[] outside;
+    private final int[] start;
+    private final int[] end;
+    private int nodeCount;
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong distanceEvaluations = new AtomicLong();
+
+    public VPTreeIndex(FeatureMatrix featureVectors, String distanceMetric) {
+        this.featureVectors = featureVectors;
+        this.metric = KNNFinder.Metric.fromName(distanceMetric);
+        this.dimensions = featureVectors.getDimensions();
+        int n = featureVectors.size();
+        double[] data = new double[n * dimensions];
+        for (int i = 0; i < n; i++) {
+            for (int d = 0; d < dimensions; d++) {
+                data[i * dimensions + d] = featureVectors.get(i, d);
+            }
+        }
+
+        // Com um descritor NaN ou infinito a distância ao ponto de vantagem é NaN ou infinita e a desigualdade
+        // triangular não poda nada com segurança: essas linhas ficam fora da árvore, no fim de rows
+        this.rows = new int[n];
+        int finite = 0;
+        for (int i = 0; i < n; i++) {
+            if (KDTreeIndex.isFinite(data, i * dimensions, dimensions)) {
+                rows[finite++] = i;
+            }
+        }
+        this.treeSize = finite;
+        for (int i = 0; i < n; i++) {
+            if (!KDTreeIndex.isFinite(data, i * dimensions, dimensions)) {
+                rows[finite++] = i;
+            }
+        }
+
+        // Cada nó interno consome um ponto de vantagem e toda folha tem ao menos um ponto
+        int maxNodes = 2 * treeSize + 1;
+        mu = new double[maxNodes];
+        inside = new int[maxNodes];
+        outside = new int[maxNodes];
+        start = new int[maxNodes];
+        end = new int[maxNodes];
+        if (treeSize > 0) {
+            build(data, new double[n], new Random(42), 0, treeSize);
+        }
+
+        this.points = new double[n * dimensions];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(data, rows[i] * dimensions, points, i * dimensions, dimensions);
+        }
+    }
+
+    public int size() {
+        return rows.length;
+    }
+
+    public KNNFinder.Metric getMetric() {
+        return metric;
+    }
+
+    public KNNFinder.Neighbor[] findKNearestNeighbors(double[] refVector, int k) {
+        long queryStart = PipelineMetrics.start();
+        TopK topK = new TopK(k);
+        long evaluations;
+        // Uma consulta degenerada está a distância NaN ou infinita de todo ponto de vantagem: varre tudo
+        if (!KDTreeIndex.isFinite(refVector, 0, dimensions)) {
+            evaluations = scanKnn(0, rows.length, refVector, topK);
+        } else {
+            evaluations = (treeSize == 0 ? 0 : searchKnn(0, refVector, topK))
+                    + scanKnn(treeSize, rows.length, refVector, topK);
+        }
+        record(evaluations);
+        // O heap já guarda distâncias verdadeiras, não brutas
+        KNNFinder.Neighbor[] neighbors = topK.toNeighbors(featureVectors, null);
+        PipelineMetrics.stop(PipelineMetrics.Stage.KNN_QUERY, queryStart);
+        return neighbors;
+    }
+
+    // Todos os vizinhos a uma distância menor ou igual a "radius", em ordem crescente de distância
+    public KNNFinder.Neighbor[] findNeighborsWithinRadius(double[] refVector, double radius) {
+        long queryStart = PipelineMetrics.start();
+        List<KNNFinder.Neighbor> result = new ArrayList<>();
+        long evaluations;
+        if (!KDTreeIndex.isFinite(refVector, 0, dimensions)) {
+            evaluations = scanRadius(0, rows.length, refVector, radius, result);
+        } else {
+            evaluations = (treeSize == 0 ? 0 : searchRadius(0, refVector, radius, result))
+                    + scanRadius(treeSize, rows.length, refVector, radius, result);
+        }
+        record(evaluations);
+        result.sort(Comparator.comparingDouble(KNNFinder.Neighbor::getDistance)
+                .thenComparingInt(KNNFinder.Neighbor::getIndex));
+        KNNFinder.Neighbor[] neighbors = result.toArray(new KNNFinder.Neighbor[0]);
+        PipelineMetrics.stop(PipelineMetrics.Stage.KNN_QUERY, queryStart);
+        return neighbors;
+    }
+
+    public long getQueryCount() {
+        return queries.get();
+    }
+
+    public long getDistanceEvaluations() {
+        return distanceEvaluations.get();
+    }
+
+    // Avaliações de distância evitadas em relação a uma varredura linear, somadas sobre todas as consultas
+    public long getSavedDistanceEvaluations() {
+        return queries.get() * rows.length - distanceEvaluations.get();
+    }
+
+    public double getSavedEvaluationRatio() {
+        long total = queries.get() * rows.length;
+        return total == 0 ? 0.0 : (double) getSavedDistanceEvaluations() / total;
+    }
+
+    public void resetStatistics() {
+        queries.set(0);
+        distanceEvaluations.set(0);
+    }
+
+    private void record(long evaluations) {
+        queries.incrementAndGet();
+        distanceEvaluations.addAndGet(evaluations);
+        PipelineMetrics.knnQueries(1, evaluations);
+    }
+
+    private int build(double[] data, double[] distances, Random random, int from, int to) {
+        int node = nodeCount++;
+        start[node] = from;
+        end[node] = to;
+        if (to - from <= LEAF_SIZE) {
+            inside[node] = -1;
+            outside[node] = -1;
+            return node;
+        }
+
+        // Ponto de vantagem aleatório (semente fixa para que a árvore seja reprodutível)
+        swap(from, from + random.nextInt(to - from));
+        int vpOffset = rows[from] * dimensions;
+        double[] vantagePoint = new double[dimensions];
+        System.arraycopy(data, vpOffset, vantagePoint, 0, dimensions);
+        for (int i = from + 1; i < to; i++) {
+            distances[i] = metric.distance(vantagePoint, data, rows[i] * dimensions);
+        }
+
+        int median = (from + 1 + to) >>> 1;
+        select(distances, from + 1, to - 1, median);
+        mu[node] = distances[median];
+        inside[node] = build(data, distances, random, from + 1, median);
+        outside[node] = build(data, distances, random, median, to);
+        return node;
+    }
+
+    // Quickselect de rows/distances em conjunto pela distância ao ponto de vantagem
+    private void select(double[] distances, int left, int right, int k) {
+        while (right > left) {
+            double pivot = distances[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (distances[i] < pivot) {
+                    i++;
+                }
+                while (distances[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double tmp = distances[i];
+                    distances[i] = distances[j];
+                    distances[j] = tmp;
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        int tmp = rows[i];
+        rows[i] = rows[j];
+        rows[j] = tmp;
+    }
+
+    private long searchKnn(int node, double[] refVector, TopK topK) {
+        if (inside[node] < 0) {
+            return scanKnn(start[node], end[node], refVector, topK);
+        }
+
+        int vp = start[node];
+        double distance = metric.distance(refVector, points, vp * dimensions);
+        offer(topK, rows[vp], distance);
+        long evaluations = 1;
+
+        // Pela desigualdade triangular, um filho só pode conter vizinhos se |d - mu| <= tau
+        double radius = mu[node];
+        if (distance < radius) {
+            evaluations += searchKnn(inside[node], refVector, topK);
+            if (distance + topK.threshold() >= radius) {
+                evaluations += searchKnn(outside[node], refVector, topK);
+            }
+        } else {
+            evaluations += searchKnn(outside[node], refVector, topK);
+            if (distance - topK.threshold() <= radius) {
+                evaluations += searchKnn(inside[node], refVector, topK);
+            }
+        }
+        return evaluations;
+    }
+
+    private long scanKnn(int from, int to, double[] refVector, TopK topK) {
+        for (int i = from; i < to; i++) {
+            offer(topK, rows[i], metric.distance(refVector, points, i * dimensions));
+        }
+        return to - from;
+    }
+
+    // Como na varredura do KNNFinder, só entram distâncias até o limite atual; NaN nunca entra no heap
+    private static void offer(TopK topK, int row, double distance) {
+        if (distance <= topK.threshold()) {
+            topK.offer(row, distance);
+        }
+    }
+
+    private long searchRadius(int node, double[] refVector, double radius, List<KNNFinder.Neighbor> result) {
+        if (inside[node] < 0) {
+            return scanRadius(start[node], end[node], refVector, radius, result);
+        }
+
+        int vp = start[node];
+        double distance = metric.distance(refVector, points, vp * dimensions);
+        collect(vp, distance, radius, result);
+        long evaluations = 1;
+        if (distance - radius <= mu[node]) {
+            evaluations += searchRadius(inside[node], refVector, radius, result);
+        }
+        if (distance + radius >= mu[node]) {
+            evaluations += searchRadius(outside[node], refVector, radius, result);
+        }
+        return evaluations;
+    }
+
+    private long scanRadius(int from, int to, double[] refVector, double radius, List<KNNFinder.Neighbor> result) {
+        for (int i = from; i < to; i++) {
+            collect(i, metric.distance(refVector, points, i * dimensions), radius, result);
+        }
+        return to - from;
+    }
+
+    private void collect(int position, double distance, double radius, List<KNNFinder.Neighbor> result) {
+        if (distance <= radius) {
+            int row = rows[position];
+            result.add(new KNNFinder.Neighbor(distance, featureVectors.getId(row), row));
+        }
+    }
+}
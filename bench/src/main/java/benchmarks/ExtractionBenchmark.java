@@ -0,0 +1,210 @@
+package benchmarks;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Cada etapa da extração sobre todas as imagens do acervo; cada operação é uma passada pelo acervo inteiro.
+// A entrada de cada etapa é a saída da etapa anterior, calculada uma vez no setup. Etapas que alteram a imagem no
+// lugar (suavização, limiar, extractDescriptors) trabalham sobre uma cópia, e o custo da cópia entra na medida.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ExtractionBenchmark {
+
+    private static final Class<?> TRACER = ProjectClasses.type("ContourTracer");
+
+    private static final MethodHandle PREPROCESS = ProjectClasses.method("ImageDescriptorExtractor",
+            "preprocessImage", ImageProcessor.class);
+    private static final MethodHandle SOBEL = ProjectClasses.method("ImageDescriptorExtractor",
+            "sobelEdgeDetection", ImageProcessor.class);
+    private static final MethodHandle THRESHOLD = ProjectClasses.method("ImageDescriptorExtractor",
+            "applyAdaptiveThreshold", ImageProcessor.class);
+    private static final MethodHandle AXES = ProjectClasses.method("ImageDescriptorExtractor",
+            "calculateMajorMinorAxes", TRACER);
+    private static final MethodHandle AXES_BRUTE_FORCE = ProjectClasses.method("ImageDescriptorExtractor",
+            "calculateMajorMinorAxesBruteForce", TRACER);
+    private static final MethodHandle EXTRACT = ProjectClasses.method("ImageDescriptorExtractor",
+            "extractDescriptors", ImagePlus.class);
+    private static final MethodHandle FUSED = ProjectClasses.method("FusedEdgePipeline", "process",
+            ImageProcessor.class);
+    private static final MethodHandle NEW_TRACER = ProjectClasses.constructor("ContourTracer");
+    private static final MethodHandle TRACE = ProjectClasses.method("ContourTracer", "trace", ImageProcessor.class);
+    private static final MethodHandle MEASURE = ProjectClasses.method("ContourTracer", "measure",
+            ImageProcessor.class, boolean.class);
+    private static final MethodHandle DECODER = ProjectClasses.method("RasterDecoder", "forCurrentThread");
+    private static final MethodHandle DECODE = ProjectClasses.method("RasterDecoder", "decode", File.class);
+    private static final MethodHandle SHARED_CACHE = ProjectClasses.method("DescriptorCache", "shared");
+    private static final MethodHandle SET_CACHE_SIZE = ProjectClasses.method("DescriptorCache", "setMaximumSize",
+            int.class);
+    private static final MethodHandle CACHE_KEY = ProjectClasses.method("DescriptorCache", "key",
+            ImageProcessor.class, String.class);
+
+    @Param("../imgs forma")
+    public String dir;
+
+    private File[] files;
+    private ImageProcessor[] originals;
+    private ImageProcessor[] blurred;
+    private ImageProcessor[] sobel;
+    private ImageProcessor[] edges;
+    // Um rastreador por imagem, para que os contornos de todas fiquem guardados ao mesmo tempo
+    private Object[] contours;
+    private ImageProcessor[] scratch;
+    private Object tracer;
+
+    @Setup
+    public void setup() throws Throwable {
+        String[] names = new File(dir).list();
+        if (names == null) {
+            throw new IllegalArgumentException("Directory not found: " + dir);
+        }
+        Arrays.sort(names);
+        List<ImageProcessor> loaded = new ArrayList<>();
+        List<File> imageFiles = new ArrayList<>();
+        for (String name : names) {
+            ImagePlus image = IJ.openImage(new File(dir, name).getPath());
+            if (image != null) {
+                loaded.add(image.getProcessor());
+                imageFiles.add(new File(dir, name));
+            }
+        }
+        int n = loaded.size();
+        files = imageFiles.toArray(new File[0]);
+        originals = loaded.toArray(new ImageProcessor[0]);
+        blurred = new ImageProcessor[n];
+        sobel = new ImageProcessor[n];
+        edges = new ImageProcessor[n];
+        contours = new Object[n];
+        scratch = new ImageProcessor[n];
+        for (int i = 0; i < n; i++) {
+            blurred[i] = (ImageProcessor) PREPROCESS.invoke(originals[i].duplicate());
+            sobel[i] = (ImageProcessor) SOBEL.invoke(blurred[i]);
+            edges[i] = (ImageProcessor) THRESHOLD.invoke(sobel[i].duplicate());
+            contours[i] = TRACE.invoke(NEW_TRACER.invoke(), edges[i]);
+            scratch[i] = originals[i].duplicate();
+        }
+        tracer = NEW_TRACER.invoke();
+        // As mesmas imagens passam a cada operação; com o cache ligado só o hash seria medido
+        SET_CACHE_SIZE.invoke(SHARED_CACHE.invoke(), 0);
+    }
+
+    // Abertura dos arquivos: ImagePlus completo pelo ImageJ ou raster de 8 bits pelo RasterDecoder
+    @Benchmark
+    public void openImage(Blackhole bh) {
+        for (File file : files) {
+            bh.consume(IJ.openImage(file.getPath()));
+        }
+    }
+
+    @Benchmark
+    public void decodeRaster(Blackhole bh) throws Throwable {
+        Object decoder = DECODER.invoke();
+        for (File file : files) {
+            bh.consume(DECODE.invoke(decoder, file));
+        }
+    }
+
+    @Benchmark
+    public void blur(Blackhole bh) throws Throwable {
+        for (int i = 0; i < originals.length; i++) {
+            copy(originals[i], scratch[i]);
+            bh.consume(PREPROCESS.invoke(scratch[i]));
+        }
+    }
+
+    @Benchmark
+    public void sobel(Blackhole bh) throws Throwable {
+        for (ImageProcessor ip : blurred) {
+            bh.consume(SOBEL.invoke(ip));
+        }
+    }
+
+    @Benchmark
+    public void threshold(Blackhole bh) throws Throwable {
+        for (int i = 0; i < sobel.length; i++) {
+            ImageProcessor ip = sobel[i].duplicate();
+            bh.consume(THRESHOLD.invoke(ip));
+        }
+    }
+
+    @Benchmark
+    public void fusedEdges(Blackhole bh) throws Throwable {
+        for (ImageProcessor ip : originals) {
+            bh.consume(FUSED.invoke(ip));
+        }
+    }
+
+    @Benchmark
+    public void contours(Blackhole bh) throws Throwable {
+        for (ImageProcessor ip : edges) {
+            bh.consume(TRACE.invoke(tracer, ip));
+        }
+    }
+
+    // Área, perímetro e eixos acumulados durante o rastreamento (ShapeAccumulator)
+    @Benchmark
+    public void shapeMeasures(Blackhole bh) throws Throwable {
+        for (ImageProcessor ip : edges) {
+            bh.consume(MEASURE.invoke(tracer, ip, false));
+        }
+    }
+
+    @Benchmark
+    public void majorMinorAxes(Blackhole bh) throws Throwable {
+        for (Object c : contours) {
+            bh.consume(AXES.invoke(c));
+        }
+    }
+
+    @Benchmark
+    public void majorMinorAxesBruteForce(Blackhole bh) throws Throwable {
+        for (Object c : contours) {
+            bh.consume(AXES_BRUTE_FORCE.invoke(c));
+        }
+    }
+
+    @Benchmark
+    public void extractDescriptors(Blackhole bh) throws Throwable {
+        for (int i = 0; i < originals.length; i++) {
+            copy(originals[i], scratch[i]);
+            bh.consume(EXTRACT.invoke(new ImagePlus("", scratch[i])));
+        }
+    }
+
+    // Custo de um acerto no DescriptorCache: o hash dos pixels de cada imagem
+    @Benchmark
+    public void descriptorCacheKey(Blackhole bh) throws Throwable {
+        for (int i = 0; i < originals.length; i++) {
+            bh.consume(CACHE_KEY.invoke(originals[i], "benchmark"));
+        }
+    }
+
+    private static void copy(ImageProcessor from, ImageProcessor to) {
+        Object pixels = from.getPixels();
+        System.arraycopy(pixels, 0, to.getPixels(), 0, from.getPixelCount());
+    }
+}
@@ -0,0 +1,130 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import lib.HaloImageAccess;
+import lib.ImageAccess;
+import lib.PixelStorage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Principais operações do ImageAccess por tamanho de imagem e tipo de armazenamento. Os forks carregam a Vector
+// API, então a aritmética usa os kernels SIMD no armazenamento DOUBLE.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ImageAccessBenchmark {
+
+    private static final double[][] MEAN_3X3 = {
+            { 1 / 9.0, 1 / 9.0, 1 / 9.0 },
+            { 1 / 9.0, 1 / 9.0, 1 / 9.0 },
+            { 1 / 9.0, 1 / 9.0, 1 / 9.0 } };
+
+    @Param({ "512", "2048" })
+    public int side;
+
+    @Param({ "DOUBLE", "FLOAT", "OFF_HEAP" })
+    public PixelStorage.Type storage;
+
+    private ImageAccess image;
+    private ImageAccess other;
+    private ImageAccess output;
+    private HaloImageAccess halo;
+    private final double[][] neighborhood = new double[3][3];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        image = new ImageAccess(side, side, storage);
+        other = new ImageAccess(side, side, storage);
+        output = new ImageAccess(side, side, storage);
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                image.putPixel(x, y, 255 * random.nextDouble());
+                other.putPixel(x, y, 1 + 255 * random.nextDouble());
+            }
+        }
+        halo = image.createHalo(1);
+    }
+
+    @Benchmark
+    public ImageAccess abs() {
+        output.abs();
+        return output;
+    }
+
+    @Benchmark
+    public ImageAccess sqrt() {
+        output.sqrt();
+        return output;
+    }
+
+    @Benchmark
+    public ImageAccess addConstant() {
+        output.add(1.0);
+        return output;
+    }
+
+    @Benchmark
+    public ImageAccess multiplyImages() {
+        output.multiply(image, other);
+        return output;
+    }
+
+    @Benchmark
+    public ImageAccess divideImages() {
+        output.divide(image, other);
+        return output;
+    }
+
+    @Benchmark
+    public void neighborhood3x3(Blackhole bh) {
+        double sum = 0.0;
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                image.getNeighborhood(x, y, neighborhood);
+                sum += neighborhood[0][0] + neighborhood[2][2];
+            }
+        }
+        bh.consume(sum);
+    }
+
+    @Benchmark
+    public ImageAccess haloFilter3x3() {
+        halo.filter(MEAN_3X3, output);
+        return output;
+    }
+
+    @Benchmark
+    public void minMaxMean(Blackhole bh) {
+        bh.consume(image.getMinimum());
+        bh.consume(image.getMaximum());
+        bh.consume(image.getMean());
+    }
+
+    @Benchmark
+    public Object statistics() {
+        return image.getStatistics();
+    }
+
+    @Benchmark
+    public ImageAccess normalizeContrast() {
+        output.normalizeContrast();
+        return output;
+    }
+}
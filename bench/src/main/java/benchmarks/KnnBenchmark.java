@@ -0,0 +1,132 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Busca KNN exata do KNNFinder sobre acervos sintéticos de 10² a 10⁷ vetores de 4 descritores, e a mesma
+// consulta pelo KDTreeIndex e pelo VPTreeIndex (construídos uma vez por acervo, fora da medida).
+// O acervo de 10⁷ vetores ocupa ~320 MB; os forks rodam com -Xmx2g.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class KnnBenchmark {
+
+    private static final int DIMENSIONS = 4;
+    private static final int BATCH = 64;
+
+    private static final Class<?> MATRIX = ProjectClasses.type("FeatureMatrix");
+
+    private static final MethodHandle NEW_MATRIX = ProjectClasses.constructor("FeatureMatrix", int.class);
+    private static final MethodHandle ADD = ProjectClasses.method("FeatureMatrix", "add", String.class,
+            double[].class);
+    private static final MethodHandle FIND = ProjectClasses.method("KNNFinder", "findKNearestNeighbors",
+            double[].class, MATRIX, int.class, String.class);
+    private static final MethodHandle FIND_BATCH = ProjectClasses.method("KNNFinder", "findKNearestNeighbors",
+            MATRIX, MATRIX, int.class, String.class);
+    private static final MethodHandle NEW_KD_TREE = ProjectClasses.constructor("KDTreeIndex", MATRIX);
+    private static final MethodHandle FIND_KD_TREE = ProjectClasses.method("KDTreeIndex", "findKNearestNeighbors",
+            double[].class, int.class, String.class);
+    private static final MethodHandle NEW_VP_TREE = ProjectClasses.constructor("VPTreeIndex", MATRIX,
+            String.class);
+    private static final MethodHandle FIND_VP_TREE = ProjectClasses.method("VPTreeIndex", "findKNearestNeighbors",
+            double[].class, int.class);
+
+    @Param({ "100", "1000", "10000", "100000", "1000000", "10000000" })
+    public int size;
+
+    @Param({ "euclidean", "manhattan" })
+    public String metric;
+
+    @Param("3")
+    public int k;
+
+    private Object corpus;
+    private Object queries;
+    private double[] query;
+
+    @Setup
+    public void setup() throws Throwable {
+        Random random = new Random(42);
+        corpus = NEW_MATRIX.invoke(DIMENSIONS);
+        double[] vector = new double[DIMENSIONS];
+        for (int i = 0; i < size; i++) {
+            // O mesmo id para todas as linhas evita 10⁷ strings no heap
+            ADD.invoke(corpus, "v", descriptors(random, vector));
+        }
+        queries = NEW_MATRIX.invoke(DIMENSIONS);
+        for (int i = 0; i < BATCH; i++) {
+            ADD.invoke(queries, "q", descriptors(random, vector));
+        }
+        query = descriptors(random, new double[DIMENSIONS]).clone();
+    }
+
+    // Estados separados para que só o benchmark de cada árvore pague a sua construção
+    @State(Scope.Benchmark)
+    public static class KdTree {
+
+        private Object index;
+
+        @Setup
+        public void setup(KnnBenchmark benchmark) throws Throwable {
+            index = NEW_KD_TREE.invoke(benchmark.corpus);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class VpTree {
+
+        private Object index;
+
+        @Setup
+        public void setup(KnnBenchmark benchmark) throws Throwable {
+            index = NEW_VP_TREE.invoke(benchmark.corpus, benchmark.metric);
+        }
+    }
+
+    @Benchmark
+    public Object single() throws Throwable {
+        return FIND.invoke(query, corpus, k, metric);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object batch() throws Throwable {
+        return FIND_BATCH.invoke(queries, corpus, k, metric);
+    }
+
+    @Benchmark
+    public Object kdTree(KdTree tree) throws Throwable {
+        return FIND_KD_TREE.invoke(tree.index, query, k, metric);
+    }
+
+    @Benchmark
+    public Object vpTree(VpTree tree) throws Throwable {
+        return FIND_VP_TREE.invoke(tree.index, query, k);
+    }
+
+    // Valores na faixa típica dos descritores (diâmetro efetivo, circularidade, arredondamento, razão de raio)
+    private static double[] descriptors(Random random, double[] vector) {
+        vector[0] = 20 + 200 * random.nextDouble();
+        vector[1] = random.nextDouble();
+        vector[2] = random.nextDouble();
+        vector[3] = 1 + 100 * random.nextDouble();
+        return vector;
+    }
+}
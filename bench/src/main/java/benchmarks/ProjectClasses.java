@@ -0,0 +1,47 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+// As classes do projeto ficam no pacote padrão, que não pode ser importado por um pacote nomeado (e o JMH exige
+// benchmarks em pacote nomeado). Elas são acessadas por MethodHandles com tipos genéricos (Object), inclusive os
+// métodos privados de cada etapa do ImageDescriptorExtractor.
+final class ProjectClasses {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private ProjectClasses() {
+    }
+
+    static Class<?> type(String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Project class not found: " + className, e);
+        }
+    }
+
+    static MethodHandle method(String className, String name, Class<?>... parameterTypes) {
+        try {
+            Method method = type(className).getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            MethodHandle handle = LOOKUP.unreflect(method);
+            return handle.asType(handle.type().generic());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Project method not found: " + className + "." + name, e);
+        }
+    }
+
+    static MethodHandle constructor(String className, Class<?>... parameterTypes) {
+        try {
+            Constructor<?> constructor = type(className).getDeclaredConstructor(parameterTypes);
+            constructor.setAccessible(true);
+            MethodHandle handle = LOOKUP.unreflectConstructor(constructor);
+            return handle.asType(handle.type().generic());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Project constructor not found: " + className, e);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package lib;
+
+/**
+ * HaloImageAccess is a read-only copy of an ImageAccess surrounded by
+ * a mirrored halo of a given width.
+ *
+ * The halo follows the same mirror boundary conditions as
+ * ImageAccess.getPixel (period 2*n-2). It is filled once, when the
+ * object is created or updated. After that, any pixel with
+ * -halo <= x < nx+halo and -halo <= y < ny+halo is read with plain
+ * index arithmetic, without tests on the borders.
+ * getNeighborhood, getPattern and filter only require the block to
+ * fit inside the halo.
+ */
+
+public class HaloImageAccess {
+	private final ImageAccess image;		// source image
+	private final int 	halo;				// width of the halo
+	private final int 	nx;					// size in X axis
+	private final int 	ny;					// size in Y axis
+	private final int 	stride;				// nx + 2*halo
+	private final double padded[];			// (nx+2*halo)*(ny+2*halo) pixels
+
+	/**
+	* Creates a copy of an ImageAccess object with a mirrored halo.
+	*
+	* @param image	the source image
+	* @param halo	the width of the halo, in pixels
+	*/
+	public HaloImageAccess(ImageAccess image, int halo) {
+		if (image == null)
+			throw new
+				ArrayStoreException("Constructor: image == null.");
+		if (halo < 0)
+			throw new
+				ArrayStoreException("Constructor: halo < 0.");
+		this.image = image;
+		this.halo = halo;
+		this.nx = image.getWidth();
+		this.ny = image.getHeight();
+		this.stride = nx + 2*halo;
+		this.padded = new double[stride*(ny + 2*halo)];
+		update();
+	}
+
+	/**
+	* Copies the pixels of the source image again, after it has been
+	* modified.
+	*/
+	public void update() {
+		int xt[] = new int[stride];
+		for (int i = 0; i < stride; i++)
+			xt[i] = mirror(i - halo, nx);
+		// Each row is copied in one block, then its halo columns are mirrored from the row itself
+		for (int j = 0; j < ny + 2*halo; j++) {
+			int index = j*stride;
+			image.read(mirror(j - halo, ny)*nx, padded, index + halo, nx);
+			for (int i = 0; i < halo; i++) {
+				padded[index + i] = padded[index + halo + xt[i]];
+				padded[index + stride - 1 - i] = padded[index + halo + xt[stride - 1 - i]];
+			}
+		}
+	}
+
+	/**
+	* Return the width of the image, without the halo.
+	*
+	* @return     	the image width
+	*/
+	public int getWidth() {
+		return nx;
+	}
+
+	/**
+	* Return the height of the image, without the halo.
+	*
+	* @return     	the image height
+	*/
+	public int getHeight() {
+		return ny;
+	}
+
+	/**
+	* Return the width of the halo.
+	*
+	* @return     	the halo width
+	*/
+	public int getHalo() {
+		return halo;
+	}
+
+	/**
+	* Returns the gray level of a pixel inside the image or its halo.
+	*
+	* @param x		input, the integer x-coordinate, -halo <= x < nx+halo
+	* @param y		input, the integer y-coordinate, -halo <= y < ny+halo
+	* @return     	the gray level of the pixel (double)
+	*/
+	public double getPixel(int x, int y) {
+		return padded[(y + halo)*stride + x + halo];
+	}
+
+	/**
+	* Gets a neighborhood arround a pixel position, with the same layout
+	* as ImageAccess.getNeighborhood: the pixel value of (x-n/2, y-n/2)
+	* is put into neigh[0][0].
+	*
+	* @param x		the integer x-coordinate of a selected central pixel
+	* @param y		the integer y-coordinate of a selected central pixel
+	* @param neigh	output, a 2D array that fits inside the halo
+	*/
+	public void getNeighborhood(int x, int y, double neigh[][]) {
+		int bx = neigh.length;
+		int by = neigh[0].length;
+		checkBlock("getNeighborhood", bx, by);
+		int index = (y - (by-1)/2 + halo)*stride + x - (bx-1)/2 + halo;
+		for (int j = 0; j < by; j++) {
+			for (int i = 0; i < bx; i++)
+				neigh[i][j] = padded[index + i];
+			index += stride;
+		}
+	}
+
+	/**
+	* Gets a neighborhood of a predefined pattern around a selected
+	* pixel (x,y), with the same layout as ImageAccess.getPattern.
+	* The halo should be at least 1.
+	*
+	* @param x			x-coordinate of a selected central pixel
+	* @param y			y-coordinate of a selected central pixel
+	* @param neigh		output, an array consisting of 9 or 5 elements
+	* @param pattern	PATTERN_SQUARE_3x3 or PATTERN_CROSS_3x3.
+	*/
+	public void getPattern(int x, int y, double neigh[], int pattern) {
+		if (neigh == null)
+			throw new ArrayStoreException("getPattern: neigh == null.");
+		checkBlock("getPattern", 3, 3);
+		int index = (y + halo)*stride + x + halo;
+		switch(pattern) {
+			case ImageAccess.PATTERN_SQUARE_3x3:
+				if (neigh.length != 9)
+					throw new
+						ArrayStoreException("getPattern: neigh.length != 9.");
+				neigh[0] = padded[index - stride - 1];
+				neigh[1] = padded[index - stride];
+				neigh[2] = padded[index - stride + 1];
+				neigh[3] = padded[index - 1];
+				neigh[4] = padded[index];
+				neigh[5] = padded[index + 1];
+				neigh[6] = padded[index + stride - 1];
+				neigh[7] = padded[index + stride];
+				neigh[8] = padded[index + stride + 1];
+				break;
+			case ImageAccess.PATTERN_CROSS_3x3:
+				if (neigh.length != 5)
+					throw new
+						ArrayStoreException("getPattern: neigh.length != 5");
+				neigh[0] = padded[index - stride];
+				neigh[1] = padded[index - 1];
+				neigh[2] = padded[index];
+				neigh[3] = padded[index + 1];
+				neigh[4] = padded[index + stride];
+				break;
+			default:
+				throw new ArrayStoreException("getPattern: unexpected pattern.");
+		}
+	}
+
+	/**
+	* Applies a neighborhood filter (3x3, 5x5, ...) to the whole image.
+	*
+	* output(x,y) = sum of kernel[i][j] * neigh[i][j], where neigh is the
+	* neighborhood of (x,y) as returned by getNeighborhood.
+	*
+	* @param kernel	the weights, a 2D array that fits inside the halo
+	* @param output	an ImageAccess object of the same size as the image
+	*/
+	public void filter(double kernel[][], ImageAccess output) {
+		if (output.getWidth() != nx || output.getHeight() != ny)
+			throw new ArrayStoreException("filter: incompatible size.");
+		int bx = kernel.length;
+		int by = kernel[0].length;
+		checkBlock("filter", bx, by);
+		// Offsets of the kernel taps relative to the central pixel
+		int n = bx*by;
+		int offsets[] = new int[n];
+		double weights[] = new double[n];
+		for (int j = 0, k = 0; j < by; j++)
+			for (int i = 0; i < bx; i++, k++) {
+				offsets[k] = (j - (by-1)/2)*stride + i - (bx-1)/2;
+				weights[k] = kernel[i][j];
+			}
+		double row[] = new double[nx];
+		for (int y = 0; y < ny; y++) {
+			int index = (y + halo)*stride + halo;
+			for (int x = 0; x < nx; x++, index++) {
+				double sum = 0.0;
+				for (int k = 0; k < n; k++)
+					sum += weights[k]*padded[index + offsets[k]];
+				row[x] = sum;
+			}
+			output.write(y*nx, row, 0, nx);
+		}
+	}
+
+	private void checkBlock(String method, int bx, int by) {
+		if ((bx-1)/2 > halo || bx/2 > halo || (by-1)/2 > halo || by/2 > halo)
+			throw new ArrayStoreException(method + ": block larger than the halo.");
+	}
+
+	// Mirror boundary conditions of ImageAccess (period 2*n-2)
+	private static int mirror(int a, int n) {
+		if (n == 1)
+			return 0;
+		int period = 2*n - 2;
+		while (a < 0)
+			a += period;				// Periodize
+		while (a >= n) {
+			a = period - a;				// Symmetrize
+			if (a < 0) a = -a;
+		}
+		return a;
+	}
+}
@@ -2,6 +2,8 @@ package lib;
 
 // File taken from Prof. Doc. Luiz Otavio Murta Junior 'pi-classes' repository
 
+import java.util.Arrays;
+
 import ij.ImagePlus;
 import ij.process.ImageProcessor;
 import ij.process.FloatProcessor;
@@ -18,13 +20,18 @@ import ij.process.ColorProcessor;
  * Many methods get/put allows to access to the data. If the
  * user try to access outside of the image, the mirror boundary
  * conditions are applied. 
+ *
+ * The pixelwise arithmetic (abs, sqrt, pow, add, multiply, subtract,
+ * divide) is delegated to PixelKernels, which uses SIMD instructions
+ * when the jdk.incubator.vector module is available.
  */
 
 public class ImageAccess {
 	public static final int PATTERN_SQUARE_3x3 = 0;
 	public static final int PATTERN_CROSS_3x3  = 1;
 
-	private double 	pixels[] = null;		// store the pixel data
+	private PixelStorage storage = null;	// store the pixel data
+	private double 	pixels[] = null;		// backing array of a DOUBLE storage, null otherwise
 	private int 	nx = 0;					// size in X axis
 	private int 	ny = 0;					// size in Y axis
 	private int 	size = 0;				// size = nx*ny
@@ -42,11 +49,11 @@ public class ImageAccess {
 		this.ny = array[0].length;
 		this.nx = array.length;
 		this.size = nx*ny;
-		pixels = new double[size];
+		allocate(PixelStorage.Type.DOUBLE);
 		int k = 0;
 		for (int j=0; j<ny; j++)
 		for (int i=0; i<nx; i++)
-			pixels[k++] = array[i][j];
+			set(k++, array[i][j]);
 	}
 
 	/**
@@ -60,33 +67,47 @@ public class ImageAccess {
 	* @param ip    an ImageProcessor object provided by ImageJ
 	*/
 	public ImageAccess(ImageProcessor ip) {
+		this(ip, PixelStorage.Type.DOUBLE);
+	}
+
+	/**
+	* Creates a new object of the class ImageAccess from an 
+	* ImageProcessor object, with the given storage type.
+	*
+	* FLOAT halves the memory of the default DOUBLE storage; OFF_HEAP
+	* keeps the pixels outside the Java heap.
+	*
+	* @param ip    	an ImageProcessor object provided by ImageJ
+	* @param type	the storage type of the pixel data
+	*/
+	public ImageAccess(ImageProcessor ip, PixelStorage.Type type) {
 		if (ip == null) 
 			throw new 
 				ArrayStoreException("Constructor: ImageProcessor == null.");
 		nx = ip.getWidth();
 		ny = ip.getHeight();
 		size = nx*ny;
-		pixels = new double[size];
+		allocate(type);
 		if (ip.getPixels() instanceof byte[]) {
 			byte[] bsrc = (byte[])ip.getPixels();
 			for (int k=0; k<size; k++)
-				pixels[k] = (double)(bsrc[k] & 0xFF);
+				set(k, (double)(bsrc[k] & 0xFF));
 		
 		}	
 		else if (ip.getPixels() instanceof short[]) {
 			 short[] ssrc = (short[])ip.getPixels();
 			 for (int k=0; k<size; k++)
-				pixels[k] = (double)(ssrc[k] & 0xFFFF);
+				set(k, (double)(ssrc[k] & 0xFFFF));
 		}	
 		else if (ip.getPixels() instanceof float[]) {
 			 float[] fsrc = (float[])ip.getPixels();
 			 for (int k=0; k<size; k++)
-				pixels[k] = (double)fsrc[k];
+				set(k, (double)fsrc[k]);
 		}
 		else if (ip.getPixels() instanceof int[]) {
 			 int[] isrc = (int[])ip.getPixels();
 			 for (int k=0; k<size; k++)
-				pixels[k] = (double)isrc[k];
+				set(k, (double)isrc[k]);
 		}
 		else  {
 			throw new 
@@ -119,20 +140,20 @@ public class ImageAccess {
 		nx = cp.getWidth();
 		ny = cp.getHeight();
 		size = nx*ny;
-		pixels = new double[size];
+		allocate(PixelStorage.Type.DOUBLE);
 		byte[] r = new byte[size];
 		byte[] g = new byte[size];
 		byte[] b = new byte[size];
 		cp.getRGB(r, g, b);
 		if (colorPlane == 0)
 			for (int k=0; k<size; k++)
-				pixels[k] = (double)(r[k] & 0xFF);
+				set(k, (double)(r[k] & 0xFF));
 		else if (colorPlane == 1)
 			for (int k=0; k<size; k++)
-				pixels[k] = (double)(g[k] & 0xFF);
+				set(k, (double)(g[k] & 0xFF));
 		else if (colorPlane == 2)
 			for (int k=0; k<size; k++)
-				pixels[k] = (double)(b[k] & 0xFF);
+				set(k, (double)(b[k] & 0xFF));
 	}
 
 	/**
@@ -145,6 +166,18 @@ public class ImageAccess {
 	* @param ny       	the size of the image along the Y-axis
 	*/
 	public ImageAccess(int nx, int ny) {
+		this(nx, ny, PixelStorage.Type.DOUBLE);
+	}
+
+	/**
+	* Creates a new object of the class ImageAccess with the given
+	* storage type. The pixels are initialized to 0.
+	*
+	* @param nx       	the size of the image along the X-axis
+	* @param ny       	the size of the image along the Y-axis
+	* @param type		the storage type of the pixel data
+	*/
+	public ImageAccess(int nx, int ny, PixelStorage.Type type) {
 		if (nx < 1)
 			throw new 
 				ArrayStoreException("Constructor: nx < 1.");
@@ -154,7 +187,101 @@ public class ImageAccess {
 		this.nx = nx;
 		this.ny = ny;
 		size = nx*ny;
-		pixels = new double[size];
+		allocate(type);
+	}
+
+	private void allocate(PixelStorage.Type type) {
+		if (type == null)
+			throw new 
+				ArrayStoreException("Constructor: type == null.");
+		storage = PixelStorage.allocate(type, size);
+		pixels = storage.array();
+	}
+
+	// Access to the pixel k whatever the storage; the DOUBLE storage is read directly
+	double get(int k) {
+		return pixels != null ? pixels[k] : storage.get(k);
+	}
+
+	void set(int k, double value) {
+		if (pixels != null)
+			pixels[k] = value;
+		else
+			storage.set(k, value);
+	}
+
+	// Block copies of the pixels [k, k+n), specialized for each storage
+	void read(int k, double[] dst, int offset, int n) {
+		storage.read(k, dst, offset, n);
+	}
+
+	void write(int k, double[] src, int offset, int n) {
+		storage.write(k, src, offset, n);
+	}
+
+	// The backing array of the DOUBLE storage, null for the other types
+	double[] array() {
+		return pixels;
+	}
+
+	// Number of pixels per block in the loops over the FLOAT and OFF_HEAP storages
+	private static final int BLOCK = 4096;
+
+	private interface UnaryKernel {
+		void apply(double[] p, int n);
+	}
+
+	private interface BinaryKernel {
+		void apply(double[] out, double[] a, double[] b, int n);
+	}
+
+	// Applies the kernel to all the pixels; without a double[] array, block by block through a buffer
+	private void apply(UnaryKernel kernel) {
+		if (pixels != null) {
+			kernel.apply(pixels, size);
+			return;
+		}
+		double[] buffer = new double[Math.min(BLOCK, size)];
+		for (int k = 0; k < size; k += BLOCK) {
+			int n = Math.min(BLOCK, size - k);
+			storage.read(k, buffer, 0, n);
+			kernel.apply(buffer, n);
+			storage.write(k, buffer, 0, n);
+		}
+	}
+
+	private void apply(ImageAccess im1, ImageAccess im2, BinaryKernel kernel) {
+		if (pixels != null && im1.pixels != null && im2.pixels != null) {
+			kernel.apply(pixels, im1.pixels, im2.pixels, size);
+			return;
+		}
+		double[] a = new double[Math.min(BLOCK, size)];
+		double[] b = new double[a.length];
+		for (int k = 0; k < size; k += BLOCK) {
+			int n = Math.min(BLOCK, size - k);
+			im1.storage.read(k, a, 0, n);
+			im2.storage.read(k, b, 0, n);
+			kernel.apply(a, a, b, n);
+			storage.write(k, a, 0, n);
+		}
+	}
+
+	/**
+	* Return the storage type of the pixel data.
+	*
+	* @return     	DOUBLE, FLOAT or OFF_HEAP
+	*/
+	public PixelStorage.Type getStorageType() {
+		return storage.getType();
+	}
+
+	/**
+	* Return the memory used by the pixel data, in bytes.
+	*
+	* @return     	the size of the pixel data
+	*/
+	public long getStorageBytes() {
+		return storage.getBytes();
 	}
 
 	/**
@@ -181,10 +308,10 @@ public class ImageAccess {
 	* @return     	the maximum value
 	*/
 	public double getMaximum() {
-		double maxi = pixels[0];
+		double maxi = get(0);
 		for (int i=1; i<size; i++)
-			if (pixels[i] > maxi) 
-				maxi = pixels[i];
+			if (get(i) > maxi) 
+				maxi = get(i);
 		return maxi;
 	}
 
@@ -194,10 +321,10 @@ public class ImageAccess {
 	* @return     	the minimum value
 	*/
 	public double getMinimum() {
-		double mini = pixels[0];
+		double mini = get(0);
 		for (int i=1; i<size; i++)
-			if (pixels[i] < mini) 
-				mini = pixels[i];
+			if (get(i) < mini) 
+				mini = get(i);
 		return mini;
 	}
 
@@ -210,11 +337,34 @@ public class ImageAccess {
 	public double getMean() {
 		double mean=0.0;
 		for ( int i=0; i<size; i++)
-			mean += pixels[i];
+			mean += get(i);
 		mean /= (double)(size);
 		return mean;
 	}
 
+	/**
+	* Return the minimum, maximum, mean and variance of ImageAccess,
+	* computed in a single pass. Large images are reduced in parallel.
+	*
+	* @return     	the statistics
+	*/
+	public PixelStatistics getStatistics() {
+		return PixelStatistics.compute(this, size >= PixelStatistics.PARALLEL_SIZE);
+	}
+
+	/**
+	* Return the statistics of ImageAccess together with a histogram of
+	* the given number of bins over the range [low, high].
+	*
+	* @param bins	the number of bins
+	* @param low	the lower bound of the first bin
+	* @param high	the upper bound of the last bin
+	* @return     	the statistics
+	*/
+	public PixelStatistics getStatistics(int bins, double low, double high) {
+		return PixelStatistics.compute(this, bins, low, high, size >= PixelStatistics.PARALLEL_SIZE);
+	}
+
 	/**
 	* Returns a copy of the pixel data organize in a
 	* 2D array.
@@ -226,17 +376,24 @@ public class ImageAccess {
 		int k = 0;
 		for (int j=0; j<ny; j++)
 			for (int i=0; i<nx; i++)
-				array[i][j] = pixels[k++];
+				array[i][j] = get(k++);
 		return  array;
 	}
 
 	/**
 	* Returns a reference to the pixel data in double (1D).
 	*
+	* With the FLOAT and OFF_HEAP storages, the pixels are returned in
+	* a new array: changes to it are not reflected in the image.
+	*
 	* @return     	the 1D double array
 	*/
 	public double[] getPixels() {
-		return pixels;
+		if (pixels != null)
+			return pixels;
+		double[] copy = new double[size];
+		storage.read(0, copy, 0, size);
+		return copy;
 	}
 
 	/**
@@ -249,7 +406,7 @@ public class ImageAccess {
 		FloatProcessor fp = new  FloatProcessor(nx, ny) ;
 		float[] fsrc = new float[size];
 		for (int k=0; k<size; k++)
-			fsrc[k] = (float)(pixels[k]);
+			fsrc[k] = (float)(get(k));
 	 	fp.setPixels(fsrc);
 	 	return fp;
 	}
@@ -265,7 +422,7 @@ public class ImageAccess {
 		byte[] bsrc = new byte[size];
 		double p;
 		for (int k=0; k<size; k++) {
-			p = pixels[k];
+			p = get(k);
 			if (p < 0)
 				p = 0.0;
 			if (p > 255.0)
@@ -278,17 +435,49 @@ public class ImageAccess {
 
 	/**
 	* Create a new ImageAccess object by duplication of the current the 
-	* ImageAccess object.
+	* ImageAccess object, with the same storage type.
 	*
 	* @return   a new ImageAccess object
 	**/
 	public ImageAccess duplicate() {
-		ImageAccess ia = new ImageAccess(nx, ny);
-		for (int i=0; i<size; i++)
-			ia.pixels[i] = this.pixels[i];
+		return duplicate(storage.getType());
+	}
+
+	/**
+	* Create a new ImageAccess object by duplication of the current the 
+	* ImageAccess object, with another storage type.
+	*
+	* @param type	the storage type of the copy
+	* @return   a new ImageAccess object
+	**/
+	public ImageAccess duplicate(PixelStorage.Type type) {
+		ImageAccess ia = new ImageAccess(nx, ny, type);
+		if (ia.pixels != null)
+			storage.read(0, ia.pixels, 0, size);
+		else if (pixels != null)
+			ia.storage.write(0, pixels, 0, size);
+		else {
+			double[] buffer = new double[Math.min(BLOCK, size)];
+			for (int k = 0; k < size; k += BLOCK) {
+				int n = Math.min(BLOCK, size - k);
+				storage.read(k, buffer, 0, n);
+				ia.storage.write(k, buffer, 0, n);
+			}
+		}
 		return ia;
 	}
 
+	/**
+	* Create a read-only copy of the image surrounded by a mirrored halo,
+	* for neighborhood access and filters without border tests.
+	*
+	* @param halo	the width of the halo, in pixels
+	* @return   a new HaloImageAccess object
+	**/
+	public HaloImageAccess createHalo(int halo) {
+		return new HaloImageAccess(this, halo);
+	}
+
 	/**
 	* An ImageAccess object calls this method for getting
 	* the gray level of a selected pixel.
@@ -319,7 +508,7 @@ public class ImageAccess {
 			while (y>=ny) y -= periody;		// Periodize	
 			if (y < 0) y = -y;				// Symmetrize
 	 	}
-		return pixels[x+y*nx];
+		return get(x+y*nx);
 	}
 
 	/**
@@ -378,14 +567,14 @@ public class ImageAccess {
 		else 
 			di = 1;
 		int index =	i+j*nx;
-	 	double v00 = pixels[index];
-		double v10 = pixels[index+di];
+	 	double v00 = get(index);
+		double v10 = get(index+di);
 		if(j>=ny-1)
 			index -= nx;
 		else
 			index += nx;
-		double v01 = pixels[index];
-		double v11 = pixels[index+di];
+		double v01 = get(index);
+		double v11 = get(index+di);
 		return (dx*(v11*dy-v10*(dy-1.0)) - (dx-1.0)*(v01*dy-v00*(dy-1.0)));
 	}
 
@@ -410,7 +599,7 @@ public class ImageAccess {
 			throw new 
 				ArrayStoreException("getColumn: column.length != ny.");
 		for (int i=0; i<ny; i++) {
-			column[i] = pixels[x];
+			column[i] = get(x);
 			x += nx;
 		}
 	}
@@ -438,7 +627,7 @@ public class ImageAccess {
 	 	if (y < ny-by-1) {
 			int index = y*nx + x;	
 	 		for (int i = 0; i < by; i++) {
-				column[i] = pixels[index];
+				column[i] = get(index);
 				index+=nx;			
 			}
 			return;
@@ -458,7 +647,7 @@ public class ImageAccess {
 	 	int index = 0;
 	 	for (int i = 0; i < by; i++) {
 	 	     index = yt[i]*nx+x;
-			 column[i] = pixels[index];
+			 column[i] = get(index);
 		}
 	}
 
@@ -482,9 +671,7 @@ public class ImageAccess {
 		if (row.length != nx)
 			throw new 
 				ArrayStoreException("getColumn: row.length != nx.");
-		y *= nx;
-		for (int i=0; i<nx; i++)
-			row[i] = pixels[y++];
+		storage.read(y*nx, row, 0, nx);
 	}
 
 	/**
@@ -508,10 +695,7 @@ public class ImageAccess {
 		int bx = row.length; 
 	 	if (x >=0)
 	 	if (x < nx-bx-1){
-			int index = y*nx + x;	
-	 		for (int i = 0; i < bx; i++) {
-				row[i] = pixels[index++];			
-			}
+			storage.read(y*nx + x, row, 0, bx);
 			return;
 		}
 	    int periodx = 2*nx - 2;	
@@ -529,7 +713,7 @@ public class ImageAccess {
 		int index = y*nx;
 	 	for (int i = 0; i < bx; i++) {
 	 		somme =index+xt[i];
-			row[i] = pixels[somme];
+			row[i] = get(somme);
 		}
 	}
 
@@ -575,7 +759,7 @@ public class ImageAccess {
 			int index = (y-by2)*nx + (x-bx2);
 			for (int j = 0; j < by; j++) {
 	 			for (int i = 0; i < bx; i++) {
-					neigh[i][j] = pixels[index++];			
+					neigh[i][j] = get(index++);			
 				}
 				index += (nx - bx);
 			}	
@@ -609,7 +793,7 @@ public class ImageAccess {
 			int index = yt[j]*nx;
 	 		for (int i = 0; i < bx; i++) {
 	 	        sum =index+xt[i];
-				neigh[i][j] = pixels[sum];
+				neigh[i][j] = get(sum);
 			}
 		}	
 	}
@@ -684,17 +868,17 @@ public class ImageAccess {
 	 	if (x < nx-1)
 	 	if (y < ny-1) { 
 			int index = (y-1)*nx + (x-1);
-			neigh[0] = pixels[index++];
-			neigh[1] = pixels[index++];
-			neigh[2] = pixels[index];
+			neigh[0] = get(index++);
+			neigh[1] = get(index++);
+			neigh[2] = get(index);
 			index += (nx - 2);
-			neigh[3] = pixels[index++];
-			neigh[4] = pixels[index++];
-			neigh[5] = pixels[index];
+			neigh[3] = get(index++);
+			neigh[4] = get(index++);
+			neigh[5] = get(index);
 			index += (nx - 2);
-			neigh[6] = pixels[index++];
-			neigh[7] = pixels[index++];
-			neigh[8] = pixels[index];
+			neigh[6] = get(index++);
+			neigh[7] = get(index++);
+			neigh[8] = get(index);
 			return;
 		}
 		int x1 = x - 1;
@@ -712,17 +896,17 @@ public class ImageAccess {
 		if ( y == ny-1)
 			y3 = y1;
 	 	int offset = y1*nx;
-		neigh[0] = pixels[offset+x1];
-		neigh[1] = pixels[offset+x2];
-		neigh[2] = pixels[offset+x3];
+		neigh[0] = get(offset+x1);
+		neigh[1] = get(offset+x2);
+		neigh[2] = get(offset+x3);
 	 	offset = y2*nx;
-		neigh[3] = pixels[offset+x1];
-		neigh[4] = pixels[offset+x2];
-		neigh[5] = pixels[offset+x3];
+		neigh[3] = get(offset+x1);
+		neigh[4] = get(offset+x2);
+		neigh[5] = get(offset+x3);
 	 	offset = y3*nx;
-		neigh[6] = pixels[offset+x1];
-		neigh[7] = pixels[offset+x2];
-		neigh[8] = pixels[offset+x3];
+		neigh[6] = get(offset+x1);
+		neigh[7] = get(offset+x2);
+		neigh[8] = get(offset+x3);
 	}
 
 	/**
@@ -739,13 +923,13 @@ public class ImageAccess {
 	 	if (x < nx-1)
 	 	if (y < ny-1) { 
 			int index = (y-1)*nx + x;
-			neigh[0] = pixels[index];
+			neigh[0] = get(index);
 			index += (nx - 1);
-			neigh[1] = pixels[index++];
-			neigh[2] = pixels[index++];
-			neigh[3] = pixels[index];
+			neigh[1] = get(index++);
+			neigh[2] = get(index++);
+			neigh[3] = get(index);
 			index += (nx - 1);
-			neigh[4] = pixels[index];
+			neigh[4] = get(index);
 			return;
 		}
 		int x1 = x - 1;
@@ -763,13 +947,13 @@ public class ImageAccess {
 		if ( y == ny-1)
 			y3 = y1;
 	 	int offset = y1*nx;
-		neigh[0] = pixels[offset+x2];
+		neigh[0] = get(offset+x2);
 	 	offset = y2*nx;
-		neigh[1] = pixels[offset+x1];
-		neigh[2] = pixels[offset+x2];
-		neigh[3] = pixels[offset+x3];
+		neigh[1] = get(offset+x1);
+		neigh[2] = get(offset+x2);
+		neigh[3] = get(offset+x3);
 	 	offset = y3*nx;
-		neigh[4] = pixels[offset+x2];
+		neigh[4] = get(offset+x2);
 	}
 
 	/**
@@ -820,7 +1004,7 @@ public class ImageAccess {
 	   		return;
 		if (y >= ny)
 		   	return;
-		pixels[x+y*nx] = value;
+		set(x+y*nx, value);
 	}
 
 	/**
@@ -840,7 +1024,7 @@ public class ImageAccess {
 		if (column.length != ny)
 			throw new ArrayStoreException("putColumn: column.length != ny.");
 		for (int i=0; i<ny; i++) {
-			pixels[x] = column[i];
+			set(x, column[i]);
 			x += nx;
 		}
 	}
@@ -871,7 +1055,7 @@ public class ImageAccess {
 	 		else 
 	 			bottom = -y+ny;
 			for (int i=top ; i<bottom  ; i++) {
-				pixels[index] = column[i];
+				set(index, column[i]);
 				index+=nx;		
 			}	
 			return;
@@ -884,7 +1068,7 @@ public class ImageAccess {
 			else 
 				bottom = -y+ny;
 			for (int i=top; i<bottom; i++) {
-				pixels[index] = column[i];	
+				set(index, column[i]);	
 				index+=nx;	
 			}
 		}
@@ -906,11 +1090,7 @@ public class ImageAccess {
 			throw new ArrayStoreException("putRow: row == null.");
 		if (row.length != nx)
 			throw new ArrayStoreException("putRow: row.length != nx.");
-		y *= nx;
-		for (int i=0; i<nx; i++) {
-			pixels[y++] = row[i];
-		}
-				
+		storage.write(y*nx, row, 0, nx);
 	}
 
 	/**
@@ -940,7 +1120,7 @@ public class ImageAccess {
 	 			right=-x+nx;
 		
 			for (int i = left; i < right; i++) {
-				pixels[index++] = row[i];	
+				set(index++, row[i]);	
 			}	
 			return;
 		} 
@@ -954,7 +1134,7 @@ public class ImageAccess {
 				right=-x+nx;
 		
 			for (int i = left; i < right; i++) {
-				pixels[index++] = row[i];	
+				set(index++, row[i]);	
 			}
 		}		
 	}
@@ -975,7 +1155,7 @@ public class ImageAccess {
 	    int k = 0;
 		for (int j=0; j<by; j++)
 		for (int i=0; i<bx; i++)
-			pixels[k++] = array[i][j];
+			set(k++, array[i][j]);
 	}
 
 	/**
@@ -1007,9 +1187,18 @@ public class ImageAccess {
 		if (y+nycopy>ny) 
 			nycopy = ny-y;
 		// Copies lines per lines
-		double[] dsrc = input.getPixels();
-		for ( int j=0; j<nycopy; j++)
-			System.arraycopy(dsrc, j*nxcopy, pixels, (j+y)*nx+x, nxcopy);
+		if (input.pixels != null && pixels != null) {
+			double[] dsrc = input.pixels;
+			for ( int j=0; j<nycopy; j++)
+				System.arraycopy(dsrc, j*nxcopy, pixels, (j+y)*nx+x, nxcopy);
+		}
+		else {
+			double[] row = new double[nxcopy];
+			for ( int j=0; j<nycopy; j++) {
+				input.storage.read(j*nxcopy, row, 0, nxcopy);
+				storage.write((j+y)*nx+x, row, 0, nxcopy);
+			}
+		}
 	}
 
 	/**
@@ -1018,9 +1207,8 @@ public class ImageAccess {
 	*
 	* @param constant a constant value 
 	*/
-	public void setConstant(double constant) {
-		for (int k=0; k<size; k++)
-			pixels[k] = constant;
+	public void setConstant(final double constant) {
+		apply((p, n) -> Arrays.fill(p, 0, n, constant));
 	}
 
 	/**
@@ -1031,8 +1219,9 @@ public class ImageAccess {
 		double minGoal = 0.0;
 		double maxGoal = 255.0;
 		// Search the min and max
-		double minImage = getMinimum();
-		double maxImage = getMaximum();
+		PixelStatistics stats = getStatistics();
+		double minImage = stats.getMinimum();
+		double maxImage = stats.getMaximum();
 		// Compute the parameter to rescale the gray levels
 		double a;
 		if ( minImage-maxImage == 0) {
@@ -1042,7 +1231,7 @@ public class ImageAccess {
 		else
 			a = (maxGoal-minGoal) / (maxImage-minImage);
 		for (int i = 0; i < size; i++) {
-			pixels[i]= (float)(a*(pixels[i]-minImage) + minGoal);
+			set(i, (float)(a*(get(i)-minImage) + minGoal));
 		}
 	}
 
@@ -1078,17 +1267,16 @@ public class ImageAccess {
 	* Compute the absolute value.
 	*/
 	public void abs() {	
-		for (int k=0; k<size; k++)
-			pixels[k] = Math.abs(pixels[k]);
+		final PixelKernels kernels = PixelKernels.get();
+		apply((p, n) -> kernels.abs(p, n));
 	}
 
 	/**
 	* Compute the square root of an ImageAccess.
 	*/
 	public void sqrt() {
-		for (int k=0; k<size; k++) {
-			pixels[k] = Math.sqrt(pixels[k]);
-		}
+		final PixelKernels kernels = PixelKernels.get();
+		apply((p, n) -> kernels.sqrt(p, n));
 	}
 
 	/**
@@ -1097,9 +1285,8 @@ public class ImageAccess {
 	* @param a 	input
 	*/
 	public void pow(final double a) {
-		for (int k=0; k<size; k++) {
-			pixels[k]= Math.pow(pixels[k], a);
-		}
+		final PixelKernels kernels = PixelKernels.get();
+		apply((p, n) -> kernels.pow(p, n, a));
 	}
 
 	/**
@@ -1109,8 +1296,8 @@ public class ImageAccess {
 	* @param constant   a constant to be added
 	*/
 	public void add(double constant) {
-		for (int k=0; k<size; k++)
-			pixels[k] += constant;
+		final PixelKernels kernels = PixelKernels.get();
+		apply((p, n) -> kernels.add(p, n, constant));
 	}
 
 	/**
@@ -1120,8 +1307,8 @@ public class ImageAccess {
 	* @param constant   a constant to be multiplied
 	*/
 	public void multiply(final double constant) {
-		for (int k=0; k<size; k++)
-			pixels[k] *= constant;
+		final PixelKernels kernels = PixelKernels.get();
+		apply((p, n) -> kernels.multiply(p, n, constant));
 	}
 
 	/**
@@ -1131,8 +1318,8 @@ public class ImageAccess {
 	* @param constant   a constant to be subtracted
 	*/
 	public void subtract(final double constant) {
-		for (int k=0; k<size; k++)
-			pixels[k] -= constant;
+		final PixelKernels kernels = PixelKernels.get();
+		apply((p, n) -> kernels.subtract(p, n, constant));
 	}
 
 	/**
@@ -1144,8 +1331,8 @@ public class ImageAccess {
 	public void divide(final double constant) {
 		if (constant == 0.0) 
 			throw new ArrayStoreException("divide: Divide by 0");
-		for (int k=0; k<size; k++)
-			pixels[k] /= constant;
+		final PixelKernels kernels = PixelKernels.get();
+		apply((p, n) -> kernels.divide(p, n, constant));
 	}
 
 	/**
@@ -1169,10 +1356,7 @@ public class ImageAccess {
 			throw new ArrayStoreException("add: incompatible size.");
 		if (im2.getHeight() != ny)
 			throw new ArrayStoreException("add: incompatible size.");
-		double[] doubleOperand1 = im1.getPixels();
-		double[] doubleOperand2 = im2.getPixels();
-		for (int k=0; k<size; k++)
-			pixels[k] = doubleOperand1[k] + doubleOperand2[k];
+		apply(im1, im2, PixelKernels.get()::add);
 	}
 
 	/**
@@ -1197,10 +1381,7 @@ public class ImageAccess {
 			throw new ArrayStoreException("multiply: incompatible size.");
 		if (im2.getHeight() != ny)
 			throw new ArrayStoreException("multiply: incompatible size.");
-		double[] doubleOperand1 = im1.getPixels();
-		double[] doubleOperand2 = im2.getPixels();
-		for (int k=0; k<size; k++)
-			pixels[k] = doubleOperand1[k] * doubleOperand2[k];
+		apply(im1, im2, PixelKernels.get()::multiply);
 	}
 
 	/**
@@ -1225,10 +1406,7 @@ public class ImageAccess {
 			throw new ArrayStoreException("subtract: incompatible size.");
 		if (im2.getHeight() != ny)
 			throw new ArrayStoreException("subtract: incompatible size.");
-		double[] doubleOperand1 = im1.getPixels();
-		double[] doubleOperand2 = im2.getPixels();
-		for (int k=0; k<size; k++)
-			pixels[k] = doubleOperand1[k] - doubleOperand2[k];
+		apply(im1, im2, PixelKernels.get()::subtract);
 	}
 
 	/**
@@ -1253,10 +1431,7 @@ public class ImageAccess {
 			throw new ArrayStoreException("divide: incompatible size.");
 		if (im2.getHeight() != ny)
 			throw new ArrayStoreException("divide: incompatible size.");
-		double[] doubleOperand1 = im1.getPixels();
-		double[] doubleOperand2 = im2.getPixels();
-		for (int k=0; k<size; k++)
-			pixels[k] = doubleOperand1[k] / doubleOperand2[k];
+		apply(im1, im2, PixelKernels.get()::divide);
 	}
 
 }
@@ -0,0 +1,137 @@
+package lib;
+
+/**
+ * PixelKernels holds the pixelwise arithmetic loops used by ImageAccess.
+ *
+ * This class is the scalar reference implementation. When the
+ * jdk.incubator.vector module is available (java --add-modules
+ * jdk.incubator.vector) and VectorPixelKernels has been compiled from
+ * the vector/ source root, the SIMD version is picked once at class
+ * initialization; otherwise the scalar loops are used.
+ */
+
+public class PixelKernels {
+	private static final PixelKernels SCALAR = new PixelKernels();
+	private static final PixelKernels DEFAULT = load();
+
+	PixelKernels() {
+	}
+
+	/**
+	* Returns the kernels selected for this JVM.
+	*/
+	public static PixelKernels get() {
+		return DEFAULT;
+	}
+
+	/**
+	* Returns the scalar reference kernels.
+	*/
+	public static PixelKernels scalar() {
+		return SCALAR;
+	}
+
+	private static PixelKernels load() {
+		try {
+			return (PixelKernels)Class.forName("lib.VectorPixelKernels").getDeclaredConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException | LinkageError e) {
+			return SCALAR;
+		}
+	}
+
+	/**
+	* Returns a short description of the implementation.
+	*/
+	public String getName() {
+		return "scalar";
+	}
+
+	/**
+	* p[k] = |p[k]| for k < n.
+	*/
+	public void abs(double[] p, int n) {
+		for (int k=0; k<n; k++)
+			p[k] = Math.abs(p[k]);
+	}
+
+	/**
+	* p[k] = sqrt(p[k]) for k < n.
+	*/
+	public void sqrt(double[] p, int n) {
+		for (int k=0; k<n; k++)
+			p[k] = Math.sqrt(p[k]);
+	}
+
+	/**
+	* p[k] = p[k]^a for k < n.
+	*/
+	public void pow(double[] p, int n, double a) {
+		for (int k=0; k<n; k++)
+			p[k] = Math.pow(p[k], a);
+	}
+
+	/**
+	* p[k] += constant for k < n.
+	*/
+	public void add(double[] p, int n, double constant) {
+		for (int k=0; k<n; k++)
+			p[k] += constant;
+	}
+
+	/**
+	* p[k] *= constant for k < n.
+	*/
+	public void multiply(double[] p, int n, double constant) {
+		for (int k=0; k<n; k++)
+			p[k] *= constant;
+	}
+
+	/**
+	* p[k] -= constant for k < n.
+	*/
+	public void subtract(double[] p, int n, double constant) {
+		for (int k=0; k<n; k++)
+			p[k] -= constant;
+	}
+
+	/**
+	* p[k] /= constant for k < n.
+	*/
+	public void divide(double[] p, int n, double constant) {
+		for (int k=0; k<n; k++)
+			p[k] /= constant;
+	}
+
+	/**
+	* out[k] = a[k] + b[k] for k < n.
+	*/
+	public void add(double[] out, double[] a, double[] b, int n) {
+		for (int k=0; k<n; k++)
+			out[k] = a[k] + b[k];
+	}
+
+	/**
+	* out[k] = a[k] * b[k] for k < n.
+	*/
+	public void multiply(double[] out, double[] a, double[] b, int n) {
+		for (int k=0; k<n; k++)
+			out[k] = a[k] * b[k];
+	}
+
+	/**
+	* out[k] = a[k] - b[k] for k < n.
+	*/
+	public void subtract(double[] out, double[] a, double[] b, int n) {
+		for (int k=0; k<n; k++)
+			out[k] = a[k] - b[k];
+	}
+
+	/**
+	* out[k] = a[k] / b[k] for k < n.
+	*/
+	public void divide(double[] out, double[] a, double[] b, int n) {
+		for (int k=0; k<n; k++)
+			out[k] = a[k] / b[k];
+	}
+}
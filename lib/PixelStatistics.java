@@ -0,0 +1,229 @@
+package lib;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * PixelStatistics holds the minimum, maximum, mean, variance and,
+ * optionally, the histogram of an ImageAccess, computed together in a
+ * single pass over the pixels.
+ *
+ * The variance of each block of pixels is computed from sums shifted by
+ * the first pixel of the block (no division per pixel), and the blocks
+ * are merged with the pairwise formula of Chan et al. Large images are
+ * reduced in parallel on the common fork-join pool. For small images
+ * the pass is serial and the mean is the same as ImageAccess.getMean.
+ */
+
+public class PixelStatistics {
+	// Images from this size are reduced in parallel
+	static final int PARALLEL_SIZE = 1 << 20;
+	// Number of pixels of a block, and below which a fork-join task is not split
+	private static final int BLOCK_SIZE = 1 << 16;
+
+	private int 	count = 0;					// number of pixels
+	private double 	minimum = Double.POSITIVE_INFINITY;
+	private double 	maximum = Double.NEGATIVE_INFINITY;
+	private double 	sum = 0.0;					// sum of the pixels
+	private double 	mean = 0.0;					// mean of the merged blocks
+	private double 	m2 = 0.0;					// sum of the squared deviations to the mean
+	private final int histogram[];				// null if no histogram was requested
+	private final double low;					// range of the histogram
+	private final double high;
+
+	private PixelStatistics(int bins, double low, double high) {
+		this.histogram = bins > 0 ? new int[bins] : null;
+		this.low = low;
+		this.high = high;
+	}
+
+	/**
+	* Computes the statistics of an image, without histogram.
+	*
+	* @param image		the image
+	* @param parallel	true to use the fork-join variant
+	* @return     		the statistics
+	*/
+	public static PixelStatistics compute(ImageAccess image, boolean parallel) {
+		return compute(image, 0, 0.0, 0.0, parallel);
+	}
+
+	/**
+	* Computes the statistics of an image with a histogram of the given
+	* number of bins over the range [low, high]. Pixels outside the range
+	* are not counted in the histogram.
+	*
+	* @param image		the image
+	* @param bins		the number of bins, 0 for no histogram
+	* @param low		the lower bound of the first bin
+	* @param high		the upper bound of the last bin
+	* @param parallel	true to use the fork-join variant
+	* @return     		the statistics
+	*/
+	public static PixelStatistics compute(ImageAccess image, int bins, double low, double high,
+			boolean parallel) {
+		if (bins < 0)
+			throw new ArrayStoreException("compute: bins < 0.");
+		if (bins > 0 && !(high > low))
+			throw new ArrayStoreException("compute: high <= low.");
+		int size = image.getWidth()*image.getHeight();
+		if (parallel && size > BLOCK_SIZE)
+			return new Reduction(image, 0, size, bins, low, high).invoke();
+		PixelStatistics stats = new PixelStatistics(bins, low, high);
+		stats.accumulate(image, 0, size);
+		return stats;
+	}
+
+	/**
+	* Return the number of pixels.
+	*
+	* @return     	the number of pixels
+	*/
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	* Return the minimum value.
+	*
+	* @return     	the minimum value
+	*/
+	public double getMinimum() {
+		return minimum;
+	}
+
+	/**
+	* Return the maximum value.
+	*
+	* @return     	the maximum value
+	*/
+	public double getMaximum() {
+		return maximum;
+	}
+
+	/**
+	* Return the mean value.
+	*
+	* @return     	the mean value
+	*/
+	public double getMean() {
+		return sum / count;
+	}
+
+	/**
+	* Return the population variance.
+	*
+	* @return     	the variance
+	*/
+	public double getVariance() {
+		return m2 / count;
+	}
+
+	/**
+	* Return the population standard deviation.
+	*
+	* @return     	the standard deviation
+	*/
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	/**
+	* Return the histogram, or null if it was not requested.
+	*
+	* @return     	the count of pixels per bin
+	*/
+	public int[] getHistogram() {
+		return histogram;
+	}
+
+	private void accumulate(ImageAccess image, int from, int to) {
+		double scale = histogram != null ? histogram.length / (high - low) : 0.0;
+		int last = histogram != null ? histogram.length - 1 : 0;
+		// The DOUBLE storage is read in place, the others are copied block by block
+		double[] pixels = image.array();
+		double[] values = pixels != null ? pixels : new double[Math.min(BLOCK_SIZE, to - from)];
+		for (int start = from; start < to; start += BLOCK_SIZE) {
+			int n = Math.min(to, start + BLOCK_SIZE) - start;
+			int base = start;
+			if (pixels == null) {
+				image.read(start, values, 0, n);
+				base = 0;
+			}
+			double shift = values[base];
+			double s1 = 0.0;
+			double s2 = 0.0;
+			for (int k = base; k < base + n; k++) {
+				double v = values[k];
+				if (v < minimum)
+					minimum = v;
+				if (v > maximum)
+					maximum = v;
+				sum += v;
+				double d = v - shift;
+				s1 += d;
+				s2 += d * d;
+				if (histogram != null && v >= low && v <= high)
+					histogram[Math.min(last, (int)((v - low) * scale))]++;
+			}
+			combine(n, shift + s1 / n, Math.max(0.0, s2 - s1 * s1 / n));
+		}
+	}
+
+	// Pairwise update of the count, mean and squared deviations (Chan et al.)
+	private void combine(int n, double otherMean, double otherM2) {
+		int total = count + n;
+		double delta = otherMean - mean;
+		m2 += otherM2 + delta * delta * ((double)count * n / total);
+		mean += delta * n / total;
+		count = total;
+	}
+
+	private void merge(PixelStatistics other) {
+		if (other.count == 0)
+			return;
+		if (other.minimum < minimum)
+			minimum = other.minimum;
+		if (other.maximum > maximum)
+			maximum = other.maximum;
+		combine(other.count, other.mean, other.m2);
+		sum += other.sum;
+		if (histogram != null)
+			for (int b = 0; b < histogram.length; b++)
+				histogram[b] += other.histogram[b];
+	}
+
+	private static final class Reduction extends RecursiveTask<PixelStatistics> {
+		private static final long serialVersionUID = 1L;
+
+		private final ImageAccess image;
+		private final int from;
+		private final int to;
+		private final int bins;
+		private final double low;
+		private final double high;
+
+		Reduction(ImageAccess image, int from, int to, int bins, double low, double high) {
+			this.image = image;
+			this.from = from;
+			this.to = to;
+			this.bins = bins;
+			this.low = low;
+			this.high = high;
+		}
+
+		protected PixelStatistics compute() {
+			if (to - from <= BLOCK_SIZE) {
+				PixelStatistics stats = new PixelStatistics(bins, low, high);
+				stats.accumulate(image, from, to);
+				return stats;
+			}
+			int middle = (from + to) >>> 1;
+			Reduction left = new Reduction(image, from, middle, bins, low, high);
+			left.fork();
+			PixelStatistics stats = new Reduction(image, middle, to, bins, low, high).compute();
+			PixelStatistics first = left.join();
+			first.merge(stats);
+			return first;
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package lib;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+/**
+ * PixelStorage is the memory backend of an ImageAccess object.
+ *
+ * <br>- DOUBLE: on-heap double[] (8 bytes per pixel), the default.
+ * <br>- FLOAT: on-heap float[] (4 bytes per pixel). Values are
+ * rounded to float when they are stored.
+ * <br>- OFF_HEAP: doubles in direct buffers outside the Java heap,
+ * for images larger than a comfortable heap. The memory is released
+ * when the ImageAccess object is garbage collected. The direct memory
+ * is capped by -XX:MaxDirectMemorySize, which defaults to the maximum
+ * heap size (-Xmx): raise it to hold images larger than the heap, e.g.
+ * java -Xmx2g -XX:MaxDirectMemorySize=16g.
+ *
+ * <br>The whole-image loops of ImageAccess go through read() and
+ * write(), which move blocks of pixels with the copy specialized for
+ * each type, instead of calling get() and set() for every pixel.
+ */
+
+public abstract class PixelStorage {
+
+	public enum Type { DOUBLE, FLOAT, OFF_HEAP }
+
+	protected final int size;		// number of pixels
+
+	PixelStorage(int size) {
+		this.size = size;
+	}
+
+	/**
+	* Allocates a storage of the given type, initialized to 0.
+	*
+	* @param type	the storage type
+	* @param size	the number of pixels
+	* @return     	the new storage
+	*/
+	static PixelStorage allocate(Type type, int size) {
+		switch(type) {
+			case DOUBLE:
+				return new DoubleStorage(size);
+			case FLOAT:
+				return new FloatStorage(size);
+			case OFF_HEAP:
+				return new OffHeapStorage(size);
+			default:
+				throw new ArrayStoreException("allocate: unexpected storage type.");
+		}
+	}
+
+	/**
+	* Return the type of the storage.
+	*
+	* @return     	the storage type
+	*/
+	public abstract Type getType();
+
+	/**
+	* Return the number of bytes used by the pixel data.
+	*
+	* @return     	the size of the pixel data in bytes
+	*/
+	public abstract long getBytes();
+
+	abstract double get(int k);
+
+	abstract void set(int k, double value);
+
+	/**
+	* Copies the pixels [k, k+n) into dst[offset, offset+n).
+	*/
+	abstract void read(int k, double[] dst, int offset, int n);
+
+	/**
+	* Copies src[offset, offset+n) into the pixels [k, k+n).
+	*/
+	abstract void write(int k, double[] src, int offset, int n);
+
+	/**
+	* Returns the backing double array of the DOUBLE storage, null for
+	* the other types.
+	*/
+	double[] array() {
+		return null;
+	}
+
+	private static final class DoubleStorage extends PixelStorage {
+		private final double data[];
+
+		DoubleStorage(int size) {
+			super(size);
+			data = new double[size];
+		}
+
+		public Type getType() {
+			return Type.DOUBLE;
+		}
+
+		public long getBytes() {
+			return 8L*size;
+		}
+
+		double get(int k) {
+			return data[k];
+		}
+
+		void set(int k, double value) {
+			data[k] = value;
+		}
+
+		void read(int k, double[] dst, int offset, int n) {
+			System.arraycopy(data, k, dst, offset, n);
+		}
+
+		void write(int k, double[] src, int offset, int n) {
+			System.arraycopy(src, offset, data, k, n);
+		}
+
+		double[] array() {
+			return data;
+		}
+	}
+
+	private static final class FloatStorage extends PixelStorage {
+		private final float data[];
+
+		FloatStorage(int size) {
+			super(size);
+			data = new float[size];
+		}
+
+		public Type getType() {
+			return Type.FLOAT;
+		}
+
+		public long getBytes() {
+			return 4L*size;
+		}
+
+		double get(int k) {
+			return data[k];
+		}
+
+		void set(int k, double value) {
+			data[k] = (float)value;
+		}
+
+		void read(int k, double[] dst, int offset, int n) {
+			for (int i = 0; i < n; i++)
+				dst[offset+i] = data[k+i];
+		}
+
+		void write(int k, double[] src, int offset, int n) {
+			for (int i = 0; i < n; i++)
+				data[k+i] = (float)src[offset+i];
+		}
+	}
+
+	// A direct buffer is limited to 2 GB, so the pixels are split in chunks of 2^27 doubles (1 GB)
+	private static final class OffHeapStorage extends PixelStorage {
+		private static final int CHUNK_BITS = 27;
+		private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+		private final DoubleBuffer chunks[];
+
+		OffHeapStorage(int size) {
+			super(size);
+			chunks = new DoubleBuffer[(int)(((long)size + CHUNK_MASK) >>> CHUNK_BITS)];
+			try {
+				for (int c = 0; c < chunks.length; c++) {
+					int length = Math.min(CHUNK_MASK + 1, size - (c << CHUNK_BITS));
+					chunks[c] = ByteBuffer.allocateDirect(8*length).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+				}
+			}
+			catch (OutOfMemoryError e) {
+				OutOfMemoryError error = new OutOfMemoryError("OFF_HEAP storage of " + (8L*size >> 20)
+					+ " MB exceeds the direct memory limit, raise it with -XX:MaxDirectMemorySize.");
+				error.initCause(e);
+				throw error;
+			}
+		}
+
+		public Type getType() {
+			return Type.OFF_HEAP;
+		}
+
+		public long getBytes() {
+			return 8L*size;
+		}
+
+		double get(int k) {
+			return chunks[k >>> CHUNK_BITS].get(k & CHUNK_MASK);
+		}
+
+		void set(int k, double value) {
+			chunks[k >>> CHUNK_BITS].put(k & CHUNK_MASK, value);
+		}
+
+		// Bulk absolute copies, split where the block crosses a chunk boundary
+		void read(int k, double[] dst, int offset, int n) {
+			while (n > 0) {
+				int length = Math.min(n, CHUNK_MASK + 1 - (k & CHUNK_MASK));
+				chunks[k >>> CHUNK_BITS].get(k & CHUNK_MASK, dst, offset, length);
+				k += length;
+				offset += length;
+				n -= length;
+			}
+		}
+
+		void write(int k, double[] src, int offset, int n) {
+			while (n > 0) {
+				int length = Math.min(n, CHUNK_MASK + 1 - (k & CHUNK_MASK));
+				chunks[k >>> CHUNK_BITS].put(k & CHUNK_MASK, src, offset, length);
+				k += length;
+				offset += length;
+				n -= length;
+			}
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package lib;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD version of PixelKernels based on the jdk.incubator.vector API.
+ *
+ * Compiling and running this class requires --add-modules
+ * jdk.incubator.vector, so it lives in its own source root (vector/)
+ * and is compiled separately from lib/:
+ *
+ * <pre>
+ * javac -cp ij.jar:. lib/*.java
+ * javac --add-modules jdk.incubator.vector -cp ij.jar:. -d . vector/lib/*.java
+ * </pre>
+ *
+ * It is loaded reflectively by PixelKernels, which falls back to the
+ * scalar loops when the class or the module is missing.
+ *
+ * Lanewise +, -, *, /, sqrt and abs are correctly rounded, so the
+ * results are identical to the scalar loops. pow is only vectorized
+ * for the exponent 2 (x*x); other exponents use Math.pow to keep the
+ * same results.
+ */
+
+final class VectorPixelKernels extends PixelKernels {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final int LANES = SPECIES.length();
+
+	VectorPixelKernels() {
+	}
+
+	public String getName() {
+		return "vector (" + LANES + " lanes)";
+	}
+
+	public void abs(double[] p, int n) {
+		int k = 0;
+		for (int bound = SPECIES.loopBound(n); k<bound; k+=LANES)
+			DoubleVector.fromArray(SPECIES, p, k).abs().intoArray(p, k);
+		for (; k<n; k++)
+			p[k] = Math.abs(p[k]);
+	}
+
+	public void sqrt(double[] p, int n) {
+		int k = 0;
+		for (int bound = SPECIES.loopBound(n); k<bound; k+=LANES)
+			DoubleVector.fromArray(SPECIES, p, k).sqrt().intoArray(p, k);
+		for (; k<n; k++)
+			p[k] = Math.sqrt(p[k]);
+	}
+
+	public void pow(double[] p, int n, double a) {
+		if (a != 2.0) {
+			super.pow(p, n, a);
+			return;
+		}
+		int k = 0;
+		for (int bound = SPECIES.loopBound(n); k<bound; k+=LANES) {
+			DoubleVector v = DoubleVector.fromArray(SPECIES, p, k);
+			v.mul(v).intoArray(p, k);
+		}
+		for (; k<n; k++)
+			p[k] = p[k] * p[k];
+	}
+
+	public void add(double[] p, int n, double constant) {
+		int k = 0;
+		for (int bound = SPECIES.loopBound(n); k<bound; k+=LANES)
+			DoubleVector.fromArray(SPECIES, p, k).add(constant).intoArray(p, k);
+		for (; k<n; k++)
+			p[k] += constant;
+	}
+
+	public void multiply(double[] p, int n, double constant) {
+		int k = 0;
+		for (int bound = SPECIES.loopBound(n); k<bound; k+=LANES)
+			DoubleVector.fromArray(SPECIES, p, k).mul(constant).intoArray(p, k);
+		for (; k<n; k++)
+			p[k] *= constant;
+	}
+
+	public void subtract(double[] p, int n, double constant) {
+		int k = 0;
+		for (int bound = SPECIES.loopBound(n); k<bound; k+=LANES)
+			DoubleVector.fromArray(SPECIES, p, k).sub(constant).intoArray(p, k);
+		for (; k<n; k++)
+			p[k] -= constant;
+	}
+
+	public void divide(double[] p, int n, double constant) {
+		int k = 0;
+		for (int bound = SPECIES.loopBound(n); k<bound; k+=LANES)
+			DoubleVector.fromArray(SPECIES, p, k).div(constant).intoArray(p, k);
+		for (; k<n; k++)
+			p[k] /= constant;
+	}
+
+	public void add(double[] out, double[] a, double[] b, int n) {
+		int k = 0;
+		for (int bound = SPECIES.loopBound(n); k<bound; k+=LANES)
+			DoubleVector.fromArray(SPECIES, a, k).add(DoubleVector.fromArray(SPECIES, b, k)).intoArray(out, k);
+		for (; k<n; k++)
+			out[k] = a[k] + b[k];
+	}
+
+	public void multiply(double[] out, double[] a, double[] b, int n) {
+		int k = 0;
+		for (int bound = SPECIES.loopBound(n); k<bound; k+=LANES)
+			DoubleVector.fromArray(SPECIES, a, k).mul(DoubleVector.fromArray(SPECIES, b, k)).intoArray(out, k);
+		for (; k<n; k++)
+			out[k] = a[k] * b[k];
+	}
+
+	public void subtract(double[] out, double[] a, double[] b, int n) {
+		int k = 0;
+		for (int bound = SPECIES.loopBound(n); k<bound; k+=LANES)
+			DoubleVector.fromArray(SPECIES, a, k).sub(DoubleVector.fromArray(SPECIES, b, k)).intoArray(out, k);
+		for (; k<n; k++)
+			out[k] = a[k] - b[k];
+	}
+
+	public void divide(double[] out, double[] a, double[] b, int n) {
+		int k = 0;
+		for (int bound = SPECIES.loopBound(n); k<bound; k+=LANES)
+			DoubleVector.fromArray(SPECIES, a, k).div(DoubleVector.fromArray(SPECIES, b, k)).intoArray(out, k);
+		for (; k<n; k++)
+			out[k] = a[k] / b[k];
+	}
+}